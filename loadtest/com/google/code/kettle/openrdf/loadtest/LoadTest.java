@@ -0,0 +1,296 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.loadtest;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.RowAdapter;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+
+import com.google.code.kettle.openrdf.di.OpenRDFStepMeta;
+
+/**
+ * Measures end-to-end extraction performance of the openRDF step without a Sesame server.
+ *
+ * A synthetic dataset is loaded into an in-memory store, which is served over the Sesame HTTP
+ * protocol by {@link SesameProtocolServer}. For every combination of result format, row set size
+ * and number of step copies, a transformation reading the store into a dummy step is run headless,
+ * and rows per second, latency percentiles and heap use are reported.
+ *
+ * Settings are read from system properties, for example
+ * <pre>
+ * java -Dloadtest.subjects=200000 -Dloadtest.formats=BINARY,SPARQL/XML -Dloadtest.copies=1,2,4 \
+ *      com.google.code.kettle.openrdf.loadtest.LoadTest
+ * </pre>
+ *
+ * When the data is spread over named graphs, the step extracts one graph at a time and the copies
+ * share the graphs between them, so every run extracts each statement once whatever the number of
+ * copies. Running more than one copy needs named graphs, so when loadtest.copies asks for more than
+ * one and loadtest.graphs is not set, 16 graphs per copy are generated.
+ *
+ * Set loadtest.iriCompaction to prefixed or split to measure IRI compaction, using the PREFIX
+ * declarations of loadtest.sparql.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class LoadTest {
+
+	private static final int MAX_SAMPLES = 100000;
+
+	public static void main(String[] args) throws Exception {
+		SyntheticDataGenerator generator = new SyntheticDataGenerator();
+		generator.setSubjects(Integer.parseInt(property("subjects", "100000")));
+		generator.setPredicatesPerSubject(Integer.parseInt(property("predicates", "10")));
+		generator.setLiteralLength(Integer.parseInt(property("literalLength", "32")));
+		generator.setLinkRatio(Double.parseDouble(property("linkRatio", "0.2")));
+		String sparql = property("sparql", "SELECT ?s ?p ?o WHERE { ?s ?p ?o }");
+		String[] formats = property("formats", "BINARY,SPARQL/XML").split(",");
+		String[] rowsetSizes = property("rowsets", "10000").split(",");
+		String[] copies = property("copies", "1").split(",");
+		int maxCopies = 1;
+		for (String copyCount : copies) {
+			maxCopies = Math.max(maxCopies, Integer.parseInt(copyCount.trim()));
+		}
+		// without graphs to share, every copy would run the whole query and the rows would be counted several times
+		int graphs = Integer.parseInt(property("graphs", maxCopies > 1 ? String.valueOf(16 * maxCopies) : "0"));
+		if (maxCopies > 1 && graphs == 0) {
+			throw new IllegalArgumentException("More than one copy needs named graphs to share, set loadtest.graphs");
+		}
+		generator.setGraphs(graphs);
+		boolean partitioned = graphs > 0;
+		int repeat = Integer.parseInt(property("repeat", "3"));
+		String report = property("report", null);
+
+		Repository repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		RepositoryConnection connection = repository.getConnection();
+		long start = System.currentTimeMillis();
+		long statements = generator.generate(connection);
+		connection.close();
+		System.out.println("Generated " + statements + " statements (" + generator.describe() + ") in " + (System.currentTimeMillis() - start) + " ms");
+
+		SesameProtocolServer server = new SesameProtocolServer(repository, "loadtest");
+		server.start(Integer.parseInt(property("port", "0")));
+		KettleEnvironment.init();
+		PrintWriter csv = report == null ? null : new PrintWriter(new FileWriter(report));
+		String header = "format,rowset,copies,run,rows,seconds,rows_per_sec,first_row_ms,gap_p50_us,gap_p95_us,gap_p99_us,gap_max_us,heap_base_mb,heap_peak_mb";
+		System.out.println(header);
+		if (csv != null) {
+			csv.println(header);
+		}
+		try {
+			for (String format : formats) {
+				for (String rowsetSize : rowsetSizes) {
+					for (String copyCount : copies) {
+						for (int run = 1; run <= repeat; run++) {
+							String line = format.trim() + "," + rowsetSize.trim() + "," + copyCount.trim() + "," + run + ","
+									+ runTransformation(server.getRepositoryURL(), sparql, format.trim(), Integer.parseInt(rowsetSize.trim()), Integer.parseInt(copyCount.trim()), partitioned);
+							System.out.println(line);
+							if (csv != null) {
+								csv.println(line);
+								csv.flush();
+							}
+						}
+					}
+				}
+			}
+		} finally {
+			if (csv != null) {
+				csv.close();
+			}
+			server.stop();
+			repository.shutDown();
+		}
+	}
+
+	private static String property(String name, String defaultValue) {
+		return System.getProperty("loadtest." + name, defaultValue);
+	}
+
+	/**
+	 * Runs the step into a dummy step once and returns the measurements as comma separated values.
+	 */
+	private static String runTransformation(String repositoryURL, String sparql, String format, int rowsetSize, int copies, boolean partitioned) throws KettleException, IOException, InterruptedException {
+		OpenRDFStepMeta meta = new OpenRDFStepMeta();
+		meta.setDefault();
+		meta.setRepositoryURL(repositoryURL);
+		meta.setSparql(sparql);
+		meta.setResultFormat(format);
+		// prefixed or split, the step logs the characters per row it saves
+		meta.setIriCompaction(property("iriCompaction", null));
+		meta.setGraphPartitioned(partitioned);
+		StepMeta input = new StepMeta("openRDF Input", meta);
+		input.setCopies(copies);
+		StepMeta output = new StepMeta("Output", new DummyTransMeta());
+
+		TransMeta transMeta = new TransMeta();
+		transMeta.setName("openRDF load test");
+		transMeta.setSizeRowset(rowsetSize);
+		transMeta.addStep(input);
+		transMeta.addStep(output);
+		transMeta.addTransHop(new TransHopMeta(input, output));
+
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		long heapBase = runtime.totalMemory() - runtime.freeMemory();
+		HeapSampler heapSampler = new HeapSampler();
+		RowTimer rowTimer = new RowTimer();
+
+		Trans trans = new Trans(transMeta);
+		trans.prepareExecution(null);
+		trans.getStepInterface("Output", 0).addRowListener(rowTimer);
+		heapSampler.start();
+		long start = System.nanoTime();
+		rowTimer.start(start);
+		trans.startThreads();
+		trans.waitUntilFinished();
+		long elapsed = System.nanoTime() - start;
+		heapSampler.finish();
+		if (trans.getErrors() > 0) {
+			throw new KettleException("The load test transformation failed, see the log for details");
+		}
+
+		double seconds = elapsed / 1e9;
+		long[] gaps = rowTimer.getGaps();
+		Arrays.sort(gaps);
+		return rowTimer.getRows() + "," + format(seconds) + "," + Math.round(rowTimer.getRows() / seconds) + ","
+				+ format(rowTimer.getFirstRowLatency() / 1e6) + "," + percentile(gaps, 0.50) + "," + percentile(gaps, 0.95) + ","
+				+ percentile(gaps, 0.99) + "," + percentile(gaps, 1.0) + "," + (heapBase >> 20) + "," + (heapSampler.getPeak() >> 20);
+	}
+
+	private static String format(double value) {
+		return String.valueOf(Math.round(value * 1000) / 1000.0);
+	}
+
+	/**
+	 * @return the percentile of the sorted gaps, in microseconds
+	 */
+	private static long percentile(long[] sortedGaps, double fraction) {
+		if (sortedGaps.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(fraction * sortedGaps.length) - 1;
+		return sortedGaps[Math.max(0, index)] / 1000;
+	}
+
+	/**
+	 * Times the rows arriving at the dummy step. Gaps between rows are kept as a uniform sample,
+	 * so memory stays fixed however many rows pass.
+	 */
+	private static class RowTimer extends RowAdapter {
+
+		private final long[] samples = new long[MAX_SAMPLES];
+		private final Random random = new Random(7);
+		private long start;
+		private long firstRow;
+		private long previous;
+		private long rows;
+		private long gaps;
+
+		public void start(long start) {
+			this.start = start;
+		}
+
+		public void rowReadEvent(RowMetaInterface rowMeta, Object[] row) throws KettleStepException {
+			long now = System.nanoTime();
+			if (rows == 0) {
+				firstRow = now;
+			} else {
+				long gap = now - previous;
+				if (gaps < MAX_SAMPLES) {
+					samples[(int) gaps] = gap;
+				} else {
+					long slot = (long) (random.nextDouble() * (gaps + 1));
+					if (slot < MAX_SAMPLES) {
+						samples[(int) slot] = gap;
+					}
+				}
+				gaps++;
+			}
+			previous = now;
+			rows++;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getFirstRowLatency() {
+			return rows == 0 ? 0 : firstRow - start;
+		}
+
+		public long[] getGaps() {
+			long[] copy = new long[(int) Math.min(gaps, MAX_SAMPLES)];
+			System.arraycopy(samples, 0, copy, 0, copy.length);
+			return copy;
+		}
+
+	}
+
+	/**
+	 * Samples the used heap while the transformation runs and keeps the peak.
+	 */
+	private static class HeapSampler extends Thread {
+
+		private volatile boolean running = true;
+		private volatile long peak;
+
+		public HeapSampler() {
+			setDaemon(true);
+		}
+
+		public void run() {
+			Runtime runtime = Runtime.getRuntime();
+			while (running) {
+				peak = Math.max(peak, runtime.totalMemory() - runtime.freeMemory());
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		public void finish() throws InterruptedException {
+			running = false;
+			join();
+		}
+
+		public long getPeak() {
+			return peak;
+		}
+
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.loadtest;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.impl.DatasetImpl;
+import org.openrdf.query.resultio.QueryResultIO;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
+import org.openrdf.query.resultio.TupleQueryResultWriter;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A minimal in-process server speaking enough of the Sesame HTTP repository protocol for
+ * HTTPRepository to evaluate tuple queries against a local repository.
+ *
+ * It uses the HTTP server built into the JDK, so no servlet container is needed.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class SesameProtocolServer {
+
+	private static final String PROTOCOL_VERSION = "6";
+
+	private final Repository repository;
+	private final String repositoryId;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	public SesameProtocolServer(Repository repository, String repositoryId) {
+		this.repository = repository;
+		this.repositoryId = repositoryId;
+	}
+
+	/**
+	 * Starts listening on the given port, or on a free port if it is 0.
+	 */
+	public void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.createContext("/openrdf-sesame/protocol", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				sendText(exchange, 200, PROTOCOL_VERSION);
+			}
+		});
+		server.createContext("/openrdf-sesame/repositories/" + repositoryId, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleQuery(exchange);
+			}
+		});
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return the URL to configure in the step
+	 */
+	public String getRepositoryURL() {
+		return "http://localhost:" + server.getAddress().getPort() + "/openrdf-sesame/repositories/" + repositoryId;
+	}
+
+	private void handleQuery(HttpExchange exchange) throws IOException {
+		Map<String, List<String>> parameters = parseParameters(exchange);
+		String query = first(parameters, "query");
+		if (query == null) {
+			sendText(exchange, 400, "MALFORMED QUERY: missing query parameter");
+			return;
+		}
+		TupleQueryResultFormat format = selectFormat(exchange.getRequestHeaders().getFirst("Accept"));
+		RepositoryConnection connection = null;
+		try {
+			connection = repository.getConnection();
+			TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, query);
+			tupleQuery.setIncludeInferred(!"false".equals(first(parameters, "infer")));
+			ValueFactory valueFactory = repository.getValueFactory();
+			List<String> defaultGraphs = parameters.get("default-graph-uri");
+			List<String> namedGraphs = parameters.get("named-graph-uri");
+			if (defaultGraphs != null || namedGraphs != null) {
+				DatasetImpl dataset = new DatasetImpl();
+				if (defaultGraphs != null) {
+					for (String graph : defaultGraphs) {
+						dataset.addDefaultGraph(toGraph(valueFactory, graph));
+					}
+				}
+				if (namedGraphs != null) {
+					for (String graph : namedGraphs) {
+						dataset.addNamedGraph(toGraph(valueFactory, graph));
+					}
+				}
+				tupleQuery.setDataset(dataset);
+			}
+			String contentType = format.getDefaultMIMEType();
+			if (format.hasCharset()) {
+				contentType += "; charset=" + format.getCharset().name();
+			}
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), 65536);
+			TupleQueryResultWriter writer = QueryResultIO.createWriter(format, out);
+			tupleQuery.evaluate(writer);
+			out.flush();
+		} catch (Exception e) {
+			sendText(exchange, 400, "MALFORMED QUERY: " + e.getMessage());
+		} finally {
+			if (connection != null) {
+				try {
+					connection.close();
+				} catch (Exception ignore) {
+
+				}
+			}
+			exchange.close();
+		}
+	}
+
+	private static URI toGraph(ValueFactory valueFactory, String graph) {
+		// the protocol uses "null" for the default context
+		return "null".equals(graph) ? null : valueFactory.createURI(graph);
+	}
+
+	/**
+	 * Picks the first result format in the Accept header that can be written, by quality.
+	 */
+	private static TupleQueryResultFormat selectFormat(String accept) {
+		TupleQueryResultFormat best = TupleQueryResultFormat.SPARQL;
+		if (accept == null) {
+			return best;
+		}
+		double bestQuality = -1;
+		for (String range : accept.split(",")) {
+			String[] parts = range.split(";");
+			double quality = 1;
+			for (int i = 1; i < parts.length; i++) {
+				String parameter = parts[i].trim();
+				if (parameter.startsWith("q=")) {
+					try {
+						quality = Double.parseDouble(parameter.substring(2));
+					} catch (NumberFormatException ignore) {
+
+					}
+				}
+			}
+			TupleQueryResultFormat format = QueryResultIO.getWriterFormatForMIMEType(parts[0].trim());
+			if (format != null && quality > bestQuality) {
+				best = format;
+				bestQuality = quality;
+			}
+		}
+		return best;
+	}
+
+	private static Map<String, List<String>> parseParameters(HttpExchange exchange) throws IOException {
+		Map<String, List<String>> parameters = new HashMap<String, List<String>>();
+		addParameters(parameters, exchange.getRequestURI().getRawQuery());
+		if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+			addParameters(parameters, new String(readFully(exchange.getRequestBody()), "UTF-8"));
+		}
+		return parameters;
+	}
+
+	private static void addParameters(Map<String, List<String>> parameters, String encoded) throws IOException {
+		if (encoded == null || encoded.length() == 0) {
+			return;
+		}
+		for (String pair : encoded.split("&")) {
+			int equals = pair.indexOf('=');
+			String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+			String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+			List<String> values = parameters.get(name);
+			if (values == null) {
+				values = new ArrayList<String>();
+				parameters.put(name, values);
+			}
+			values.add(value);
+		}
+	}
+
+	private static String first(Map<String, List<String>> parameters, String name) {
+		List<String> values = parameters.get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] body = text.getBytes("UTF-8");
+		try {
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+			exchange.sendResponseHeaders(status, body.length);
+			exchange.getResponseBody().write(body);
+		} catch (IOException ignore) {
+			// the headers were already sent when evaluation failed half way
+		}
+		exchange.close();
+	}
+
+}
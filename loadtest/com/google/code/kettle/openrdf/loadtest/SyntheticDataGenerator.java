@@ -0,0 +1,138 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.loadtest;
+
+import java.util.Random;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+
+/**
+ * Fills a repository with a synthetic dataset of a configurable size and shape.
+ *
+ * Every subject gets the same number of predicates. A share of the objects are links to other
+ * subjects, the rest are literals of a fixed length. Subjects are spread round robin over the
+ * named graphs, or all go into the default graph when there are none.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class SyntheticDataGenerator {
+
+	public static final String NAMESPACE = "http://example.org/loadtest/";
+
+	private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+	private int subjects = 100000;
+	private int predicatesPerSubject = 10;
+	private int literalLength = 32;
+	private double linkRatio = 0.2;
+	private int graphs = 0;
+	private long seed = 42;
+
+	/**
+	 * Adds the dataset to the repository, committing every batch of statements.
+	 *
+	 * @return the number of statements added
+	 */
+	public long generate(RepositoryConnection connection) throws RepositoryException {
+		ValueFactory valueFactory = connection.getValueFactory();
+		Random random = new Random(seed);
+		URI[] predicates = new URI[predicatesPerSubject];
+		for (int i = 0; i < predicates.length; i++) {
+			predicates[i] = valueFactory.createURI(NAMESPACE, "p" + i);
+		}
+		URI modified = valueFactory.createURI("http://purl.org/dc/terms/modified");
+		URI[] contexts = new URI[graphs];
+		for (int i = 0; i < contexts.length; i++) {
+			contexts[i] = valueFactory.createURI(NAMESPACE + "graph/", "g" + i);
+		}
+		char[] label = new char[literalLength];
+		long statements = 0;
+		connection.setAutoCommit(false);
+		for (int s = 0; s < subjects; s++) {
+			URI subject = valueFactory.createURI(NAMESPACE + "resource/", "r" + s);
+			URI context = graphs == 0 ? null : contexts[s % graphs];
+			for (int p = 0; p < predicates.length; p++) {
+				if (random.nextDouble() < linkRatio) {
+					URI object = valueFactory.createURI(NAMESPACE + "resource/", "r" + random.nextInt(subjects));
+					add(connection, subject, predicates[p], object, context);
+				} else {
+					for (int c = 0; c < label.length; c++) {
+						label[c] = ALPHABET[random.nextInt(ALPHABET.length)];
+					}
+					add(connection, subject, predicates[p], valueFactory.createLiteral(new String(label)), context);
+				}
+				statements++;
+			}
+			Literal timestamp = valueFactory.createLiteral(s);
+			add(connection, subject, modified, timestamp, context);
+			statements++;
+			if (s % 10000 == 9999) {
+				connection.commit();
+			}
+		}
+		connection.commit();
+		connection.setAutoCommit(true);
+		return statements;
+	}
+
+	private static void add(RepositoryConnection connection, URI subject, URI predicate, Value object, URI context) throws RepositoryException {
+		if (context == null) {
+			connection.add(subject, predicate, object);
+		} else {
+			connection.add(subject, predicate, object, context);
+		}
+	}
+
+	public void setSubjects(int subjects) {
+		this.subjects = subjects;
+	}
+
+	public void setPredicatesPerSubject(int predicatesPerSubject) {
+		this.predicatesPerSubject = predicatesPerSubject;
+	}
+
+	public void setLiteralLength(int literalLength) {
+		this.literalLength = literalLength;
+	}
+
+	public void setLinkRatio(double linkRatio) {
+		this.linkRatio = linkRatio;
+	}
+
+	public void setGraphs(int graphs) {
+		this.graphs = graphs;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return a description of the dataset shape for the report
+	 */
+	public String describe() {
+		return subjects + " subjects x " + (predicatesPerSubject + 1) + " predicates, " + literalLength + " character literals, "
+				+ (graphs == 0 ? "default graph" : graphs + " named graphs");
+	}
+
+}
@@ -0,0 +1,133 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.util.HashMap;
+
+/**
+ * A string keyed map from a key to a fixed number of string values, for preloaded lookups.
+ *
+ * Keys and values live in flat arrays with open addressing, so an entry costs its strings plus
+ * a few array slots rather than the entry, array and boxing objects of a HashMap. Repeated
+ * values, typical for codes and labels, are stored once.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class CompactLookupMap {
+
+	private final int width;
+	private String[] keys;
+	private String[] values;
+	private int size;
+	private HashMap<String, String> distinctValues;
+
+	/**
+	 * @param width the number of values stored for each key
+	 */
+	public CompactLookupMap(int width) {
+		this.width = width;
+		this.keys = new String[1024];
+		this.values = new String[1024 * width];
+		this.distinctValues = new HashMap<String, String>();
+	}
+
+	/**
+	 * Adds the key with its values, unless the key is already present.
+	 *
+	 * @return true if the key was added
+	 */
+	public boolean put(String key, String[] row) {
+		int slot = slotOf(key);
+		if (keys[slot] != null) {
+			return false;
+		}
+		keys[slot] = key;
+		for (int i = 0; i < width; i++) {
+			values[slot * width + i] = share(row[i]);
+		}
+		size++;
+		if (size * 4 > keys.length * 3) {
+			resize();
+		}
+		return true;
+	}
+
+	/**
+	 * @return the values stored for the key, or null if the key is not present
+	 */
+	public String[] get(String key) {
+		int slot = slotOf(key);
+		if (keys[slot] == null) {
+			return null;
+		}
+		String[] row = new String[width];
+		System.arraycopy(values, slot * width, row, 0, width);
+		return row;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Drops the table used to share repeated values, once loading is complete.
+	 */
+	public void trim() {
+		distinctValues = null;
+	}
+
+	private String share(String value) {
+		if (value == null || distinctValues == null) {
+			return value;
+		}
+		String shared = distinctValues.get(value);
+		if (shared == null) {
+			// bound the sharing table, so unique values such as labels do not double the footprint
+			if (distinctValues.size() < 65536) {
+				distinctValues.put(value, value);
+			}
+			return value;
+		}
+		return shared;
+	}
+
+	private int slotOf(String key) {
+		int mask = keys.length - 1;
+		int h = key.hashCode() * 0x9e3779b9;
+		int slot = (h ^ (h >>> 16)) & mask;
+		while (keys[slot] != null && !keys[slot].equals(key)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize() {
+		String[] oldKeys = keys;
+		String[] oldValues = values;
+		keys = new String[oldKeys.length * 2];
+		values = new String[keys.length * width];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int slot = slotOf(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				System.arraycopy(oldValues, i * width, values, slot * width, width);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.algebra.evaluation.util.ValueComparator;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransListener;
+
+/**
+ * State shared by the copies of a step in one run of a transformation.
+ *
+ * Work that must only become permanent once the rows reached their target, such as moving the watermark
+ * forward, is registered here and carried out when the whole transformation finished without errors.
+ * Copies running on other slave servers have a coordinator of their own.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class CopyCoordinator implements TransListener {
+
+	/**
+	 * Work carried out when the transformation finished.
+	 */
+	public interface Completion {
+
+		/**
+		 * Called when the transformation finished without errors and was not stopped.
+		 */
+		void succeeded();
+
+		/**
+		 * Called when the transformation failed or was stopped.
+		 */
+		void failed();
+
+	}
+
+	private static final Map<Trans, Map<String, CopyCoordinator>> COORDINATORS = new WeakHashMap<Trans, Map<String, CopyCoordinator>>();
+
+	private final ValueComparator valueComparator = new ValueComparator();
+	private final Set<String> claimed = new HashSet<String>();
+	private final List<Completion> completions = new ArrayList<Completion>();
+	private Value watermark;
+	private Map<String, Long> graphs;
+
+	private CopyCoordinator() {
+
+	}
+
+	/**
+	 * @return the coordinator of the copies of the step in this run of the transformation
+	 */
+	public static synchronized CopyCoordinator forStep(Trans trans, String stepname) {
+		Map<String, CopyCoordinator> steps = COORDINATORS.get(trans);
+		if (steps == null) {
+			steps = new HashMap<String, CopyCoordinator>();
+			COORDINATORS.put(trans, steps);
+		}
+		CopyCoordinator coordinator = steps.get(stepname);
+		if (coordinator == null) {
+			coordinator = new CopyCoordinator();
+			steps.put(stepname, coordinator);
+			trans.addTransListener(coordinator);
+		}
+		return coordinator;
+	}
+
+	/**
+	 * @return true for the first copy to claim the task, false for the others
+	 */
+	public synchronized boolean claim(String task) {
+		return claimed.add(task);
+	}
+
+	/**
+	 * Keeps the highest watermark value of all copies.
+	 */
+	public synchronized void offerWatermark(Value value) {
+		if (value != null && (watermark == null || valueComparator.compare(value, watermark) > 0)) {
+			watermark = value;
+		}
+	}
+
+	/**
+	 * @return the highest watermark value any copy offered, or null when none returned rows
+	 */
+	public synchronized Value getWatermark() {
+		return watermark;
+	}
+
+	/**
+	 * @return the named graphs listed by the first copy, or null when none listed them yet
+	 */
+	public synchronized Map<String, Long> getGraphs() {
+		return graphs;
+	}
+
+	public synchronized void setGraphs(Map<String, Long> graphs) {
+		this.graphs = graphs;
+	}
+
+	/**
+	 * Registers work to carry out when the transformation finished.
+	 */
+	public synchronized void onCompletion(Completion completion) {
+		completions.add(completion);
+	}
+
+	public void transFinished(Trans trans) {
+		List<Completion> pending;
+		synchronized (this) {
+			pending = new ArrayList<Completion>(completions);
+			completions.clear();
+		}
+		boolean succeeded = trans.getErrors() == 0 && !trans.isStopped();
+		for (Completion completion : pending) {
+			if (succeeded) {
+				completion.succeeded();
+			} else {
+				completion.failed();
+			}
+		}
+		synchronized (CopyCoordinator.class) {
+			COORDINATORS.remove(trans);
+		}
+	}
+
+}
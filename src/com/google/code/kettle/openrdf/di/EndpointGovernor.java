@@ -0,0 +1,136 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps the number of queries running at the same time against one repository, across all steps
+ * and transformations in the JVM.
+ *
+ * Queries beyond the cap wait in line, first come first served. When steps set different caps for
+ * an endpoint the smallest one applies to all of them, so no step can raise the load another step
+ * limited. A smaller cap takes effect as running queries end.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class EndpointGovernor {
+
+	/**
+	 * The Kettle variable, or kettle.properties entry, with the cap used when the step sets none.
+	 */
+	public static final String MAX_QUERIES_VARIABLE = "OPENRDF_MAX_CONCURRENT_QUERIES";
+
+	private static final Map<String, EndpointGovernor> governors = new HashMap<String, EndpointGovernor>();
+
+	private final String repositoryURL;
+	private final Permits permits;
+	private volatile int maxQueries;
+	private volatile boolean conflicting;
+
+	private EndpointGovernor(String repositoryURL, int maxQueries) {
+		this.repositoryURL = repositoryURL;
+		this.maxQueries = maxQueries;
+		this.permits = new Permits(maxQueries);
+	}
+
+	/**
+	 * @param maxQueries the cap the step sets, which applies unless another step set a smaller one
+	 * @return the governor shared by all steps querying the repository
+	 */
+	public static synchronized EndpointGovernor forRepository(String repositoryURL, int maxQueries) {
+		String key = repositoryURL.trim();
+		int cap = Math.max(1, maxQueries);
+		EndpointGovernor governor = governors.get(key);
+		if (governor == null) {
+			governor = new EndpointGovernor(key, cap);
+			governors.put(key, governor);
+		} else if (cap != governor.maxQueries) {
+			governor.conflicting = true;
+			governor.lower(cap);
+		}
+		return governor;
+	}
+
+	/**
+	 * Lowers the cap. Queries running beyond it are not interrupted, the next queries wait for them.
+	 */
+	private void lower(int cap) {
+		if (cap < maxQueries) {
+			permits.reduce(maxQueries - cap);
+			maxQueries = cap;
+		}
+	}
+
+	/**
+	 * Waits for a turn to query the repository.
+	 *
+	 * @return the time waited, in nanoseconds
+	 */
+	public long acquire() throws InterruptedException {
+		long start = System.nanoTime();
+		permits.acquire();
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Ends a turn started by {@link #acquire()}.
+	 */
+	public void release() {
+		permits.release();
+	}
+
+	public String getRepositoryURL() {
+		return repositoryURL;
+	}
+
+	public int getMaxQueries() {
+		return maxQueries;
+	}
+
+	/**
+	 * @return true when steps set different caps for the repository
+	 */
+	public boolean isConflicting() {
+		return conflicting;
+	}
+
+	/**
+	 * @return an estimate of the number of queries waiting for a turn
+	 */
+	public int getWaiting() {
+		return permits.getQueueLength();
+	}
+
+	private static class Permits extends Semaphore {
+
+		private static final long serialVersionUID = 1L;
+
+		Permits(int permits) {
+			super(permits, true);
+		}
+
+		void reduce(int reduction) {
+			reducePermits(reduction);
+		}
+
+	}
+
+}
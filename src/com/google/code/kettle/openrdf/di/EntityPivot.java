@@ -0,0 +1,173 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+
+/**
+ * Turns consecutive subject, predicate, object solutions into one wide row per subject, with a
+ * column per configured predicate.
+ *
+ * Only the subject being collected is held in memory, so the solutions must arrive grouped by
+ * subject, for example through ORDER BY ?s. A subject that comes back later starts a new row.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class EntityPivot {
+
+	/** Keeps the first object of the predicate. */
+	public static final String FIRST = "first";
+	/** Joins all objects of the predicate with the separator. */
+	public static final String CONCAT = "concat";
+	/** Counts the objects of the predicate. */
+	public static final String COUNT = "count";
+
+	public static final String[] AGGREGATIONS = new String[] { FIRST, CONCAT, COUNT };
+
+	private final String subjectBinding;
+	private final String predicateBinding;
+	private final String objectBinding;
+	private final String separator;
+	private final String[] aggregations;
+	private final Map<String, int[]> columns = new HashMap<String, int[]>();
+
+	private String subject;
+	private final String[] firsts;
+	private final StringBuilder[] texts;
+	private final long[] counts;
+	private long entities;
+
+	/**
+	 * @param predicates the predicate IRI of each column
+	 * @param aggregations how each column handles a predicate with several objects, one of {@link #AGGREGATIONS}
+	 */
+	public EntityPivot(String subjectBinding, String predicateBinding, String objectBinding, String[] predicates, String[] aggregations, String separator) {
+		this.subjectBinding = subjectBinding;
+		this.predicateBinding = predicateBinding;
+		this.objectBinding = objectBinding;
+		this.separator = separator == null ? "" : separator;
+		this.aggregations = aggregations;
+		for (int i = 0; i < predicates.length; i++) {
+			int[] indexes = columns.get(predicates[i]);
+			if (indexes == null) {
+				indexes = new int[] { i };
+			} else {
+				// the same predicate can feed several columns, say its first value and its count
+				int[] more = new int[indexes.length + 1];
+				System.arraycopy(indexes, 0, more, 0, indexes.length);
+				more[indexes.length] = i;
+				indexes = more;
+			}
+			columns.put(predicates[i], indexes);
+		}
+		firsts = new String[predicates.length];
+		texts = new StringBuilder[predicates.length];
+		counts = new long[predicates.length];
+	}
+
+	/**
+	 * @return true if the solution is about another subject than the one being collected,
+	 * in which case the row of the collected subject should be taken with {@link #fill(Object[])} first
+	 */
+	public boolean startsNewEntity(BindingSet bindingSet) {
+		Value value = bindingSet.getValue(subjectBinding);
+		return subject != null && value != null && !subject.equals(value.stringValue());
+	}
+
+	/**
+	 * Adds the object of the solution to the columns of its predicate.
+	 */
+	public void add(BindingSet bindingSet) {
+		Value subjectValue = bindingSet.getValue(subjectBinding);
+		Value predicate = bindingSet.getValue(predicateBinding);
+		Value object = bindingSet.getValue(objectBinding);
+		if (subjectValue == null) {
+			return;
+		}
+		subject = subjectValue.stringValue();
+		if (predicate == null || object == null) {
+			return;
+		}
+		int[] indexes = columns.get(predicate.stringValue());
+		if (indexes == null) {
+			return;
+		}
+		String text = object.stringValue();
+		for (int index : indexes) {
+			String aggregation = aggregations[index];
+			if (COUNT.equals(aggregation)) {
+				counts[index]++;
+			} else if (CONCAT.equals(aggregation)) {
+				if (texts[index] == null) {
+					texts[index] = new StringBuilder(text);
+				} else {
+					texts[index].append(separator).append(text);
+				}
+			} else if (firsts[index] == null) {
+				firsts[index] = text;
+			}
+		}
+	}
+
+	public boolean hasEntity() {
+		return subject != null;
+	}
+
+	/**
+	 * Writes the subject and its columns into the row and starts collecting the next subject.
+	 *
+	 * @param row a row of at least {@link #getWidth()} fields
+	 */
+	public void fill(Object[] row) {
+		row[0] = subject;
+		for (int i = 0; i < firsts.length; i++) {
+			String aggregation = aggregations[i];
+			if (COUNT.equals(aggregation)) {
+				row[i + 1] = Long.valueOf(counts[i]);
+			} else if (CONCAT.equals(aggregation)) {
+				row[i + 1] = texts[i] == null ? null : texts[i].toString();
+			} else {
+				row[i + 1] = firsts[i];
+			}
+			firsts[i] = null;
+			texts[i] = null;
+			counts[i] = 0;
+		}
+		subject = null;
+		entities++;
+	}
+
+	/**
+	 * @return the number of fields in a row: the subject and one per column
+	 */
+	public int getWidth() {
+		return firsts.length + 1;
+	}
+
+	/**
+	 * @return the number of rows filled so far
+	 */
+	public long getEntities() {
+		return entities;
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spreads named graphs over the copies of a step, so every graph is extracted by exactly one copy.
+ *
+ * Graphs are handed out largest first, each to the copy with the least work so far. Every copy
+ * computes the same assignment from the same graph sizes, so no coordination between copies is needed.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class GraphPartitioner {
+
+	private GraphPartitioner() {
+
+	}
+
+	/**
+	 * @param graphSizes the number of statements in each graph
+	 * @param partitions the number of step copies
+	 * @param partition the number of this copy, from 0
+	 * @return the graphs this copy should extract, largest first
+	 */
+	public static List<String> assign(Map<String, Long> graphSizes, int partitions, int partition) {
+		List<Map.Entry<String, Long>> graphs = new ArrayList<Map.Entry<String, Long>>(graphSizes.entrySet());
+		Collections.sort(graphs, new Comparator<Map.Entry<String, Long>>() {
+			public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+				int bySize = b.getValue().compareTo(a.getValue());
+				return bySize != 0 ? bySize : a.getKey().compareTo(b.getKey());
+			}
+		});
+		long[] load = new long[Math.max(1, partitions)];
+		List<String> assigned = new ArrayList<String>();
+		for (Map.Entry<String, Long> graph : graphs) {
+			int lightest = 0;
+			for (int i = 1; i < load.length; i++) {
+				if (load[i] < load[lightest]) {
+					lightest = i;
+				}
+			}
+			// an empty graph still costs a query
+			load[lightest] += Math.max(1, graph.getValue());
+			if (lightest == partition) {
+				assigned.add(graph.getKey());
+			}
+		}
+		return assigned;
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+
+/**
+ * Shortens the IRIs in output rows with known namespace prefixes.
+ *
+ * In prefixed mode an IRI becomes prefix:local. In split mode every binding gets two fields: the local
+ * name, and the prefix of its namespace in a field named after the binding with the suffix _ns. The
+ * prefix strings are shared by all rows. IRIs in no known namespace, literals and blank nodes are
+ * passed on whole.
+ *
+ * The UTF-8 bytes of the values of every row are counted before and after compaction, to report the
+ * saving in the volume steps downstream sort or spill.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class IriCompactor {
+
+	public static final String PREFIXED = "prefixed";
+	public static final String SPLIT = "split";
+
+	public static final String[] MODES = new String[] { "", PREFIXED, SPLIT };
+
+	/** The suffix of the field holding the namespace prefix in split mode. */
+	public static final String NAMESPACE_SUFFIX = "_ns";
+
+	private final boolean split;
+	private final Map<String, String> prefixes = new HashMap<String, String>();
+	// the lengths of the namespaces, longest first
+	private final SortedSet<Integer> lengths = new TreeSet<Integer>(Collections.reverseOrder());
+	private long bytesBefore;
+	private long bytesAfter;
+	private long rows;
+
+	public IriCompactor(String mode) {
+		this.split = SPLIT.equals(mode);
+	}
+
+	/**
+	 * Adds a namespace. When a namespace is added twice the first prefix is kept.
+	 */
+	public void addNamespace(String prefix, String namespace) {
+		if (namespace != null && namespace.length() > 0 && !prefixes.containsKey(namespace)) {
+			prefixes.put(namespace, prefix == null ? "" : prefix);
+			lengths.add(Integer.valueOf(namespace.length()));
+		}
+	}
+
+	/**
+	 * Writes the values of the bindings into the row, compacting IRIs.
+	 */
+	public void fill(BindingSet bindingSet, List<String> bindingNames, Object[] row) {
+		for (int i = 0; i < bindingNames.size(); i++) {
+			Value value = bindingSet.getValue(bindingNames.get(i));
+			String text = value == null ? null : value.stringValue();
+			String prefix = null;
+			if (text != null) {
+				bytesBefore += utf8Length(text);
+				if (value instanceof URI) {
+					int end = findNamespaceEnd(text);
+					if (end > 0) {
+						prefix = prefixes.get(text.substring(0, end));
+						String local = text.substring(end);
+						text = split ? local : prefix + ":" + local;
+					}
+				}
+				bytesAfter += utf8Length(text);
+			}
+			if (split) {
+				row[i * 2] = text;
+				row[i * 2 + 1] = prefix;
+				if (prefix != null) {
+					bytesAfter += utf8Length(prefix);
+				}
+			} else {
+				row[i] = text;
+			}
+		}
+		rows++;
+	}
+
+	/**
+	 * Looks for the longest known namespace the IRI starts with, whatever character the namespace ends in.
+	 *
+	 * @return the length of the namespace, or -1 if the IRI is in no known namespace
+	 */
+	private int findNamespaceEnd(String iri) {
+		for (Integer length : lengths) {
+			int end = length.intValue();
+			if (end <= iri.length() && prefixes.containsKey(iri.substring(0, end))) {
+				return end;
+			}
+		}
+		return -1;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the average number of UTF-8 bytes per row before compaction
+	 */
+	public double getBytesPerRowBefore() {
+		return rows == 0 ? 0 : (double) bytesBefore / rows;
+	}
+
+	/**
+	 * @return the average number of UTF-8 bytes per row after compaction
+	 */
+	public double getBytesPerRowAfter() {
+		return rows == 0 ? 0 : (double) bytesAfter / rows;
+	}
+
+	/**
+	 * @return the UTF-8 bytes compaction took off all rows together
+	 */
+	public long getBytesSaved() {
+		return bytesBefore - bytesAfter;
+	}
+
+	/**
+	 * @return the length of the text in UTF-8, without encoding it
+	 */
+	private static int utf8Length(String text) {
+		int length = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+				// a surrogate pair takes four bytes
+				length += 2;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+}
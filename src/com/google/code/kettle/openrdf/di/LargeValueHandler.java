@@ -0,0 +1,158 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Keeps large values out of the rows on their way downstream. A value longer than the threshold is
+ * written to a file of its own, and the row carries the path of the file in a companion field instead.
+ *
+ * In binary mode the fields hold UTF-8 bytes, and large values stay in the row for as long as the
+ * large values of the rows that may still sit in the output buffer fit in the budget. Beyond that
+ * they go to a file as well, so the memory held by large values stays bounded.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class LargeValueHandler {
+
+	public static final String FILE_SUFFIX = "_file";
+
+	private final int[] valuePositions;
+	private final String[] fieldNames;
+	private final int filePosition;
+	private final int threshold;
+	private final boolean binary;
+	private final File directory;
+	private final long budget;
+
+	// the bytes of large values kept in each of the last rows passed on
+	private final long[] window;
+	private int windowIndex;
+	private long windowBytes;
+	private long peakBytes;
+
+	private long inlineValues;
+	private long fileValues;
+	private long fileBytes;
+
+	/**
+	 * @param valuePositions the positions of the fields that may hold large values
+	 * @param fieldNames the names of those fields, used to name the files
+	 * @param filePosition the position of the companion field of the first of them, the others follow
+	 * @param threshold the number of characters above which a value is large
+	 * @param binary true to pass values on as UTF-8 bytes rather than strings
+	 * @param directory where the files go, or null for the default temporary directory
+	 * @param budget the bytes large values in binary fields may take
+	 * @param bufferedRows the number of rows that can be on their way downstream at the same time
+	 */
+	public LargeValueHandler(int[] valuePositions, String[] fieldNames, int filePosition, int threshold, boolean binary, File directory, long budget, int bufferedRows) {
+		this.valuePositions = valuePositions;
+		this.fieldNames = fieldNames;
+		this.filePosition = filePosition;
+		this.threshold = threshold;
+		this.binary = binary;
+		this.directory = directory;
+		this.budget = budget;
+		this.window = new long[Math.max(1, bufferedRows)];
+	}
+
+	/**
+	 * Moves the large values of the row out of it, as needed.
+	 */
+	public void handle(Object[] row) throws IOException {
+		long rowBytes = 0;
+		windowBytes -= window[windowIndex];
+		for (int i = 0; i < valuePositions.length; i++) {
+			Object value = row[valuePositions[i]];
+			if (!(value instanceof String)) {
+				continue;
+			}
+			String string = (String) value;
+			if (string.length() <= threshold) {
+				if (binary) {
+					row[valuePositions[i]] = string.getBytes("UTF-8");
+				}
+				continue;
+			}
+			// every character takes at least a byte in UTF-8, so only encode a value that may fit
+			if (binary && windowBytes + rowBytes + string.length() <= budget) {
+				byte[] bytes = string.getBytes("UTF-8");
+				if (windowBytes + rowBytes + bytes.length <= budget) {
+					row[valuePositions[i]] = bytes;
+					rowBytes += bytes.length;
+					inlineValues++;
+					continue;
+				}
+			}
+			row[filePosition + i] = write(fieldNames[i], string);
+			row[valuePositions[i]] = null;
+		}
+		window[windowIndex] = rowBytes;
+		windowBytes += rowBytes;
+		peakBytes = Math.max(peakBytes, windowBytes);
+		windowIndex = (windowIndex + 1) % window.length;
+	}
+
+	/**
+	 * Writes the value in UTF-8, a buffer at a time rather than encoding it whole.
+	 */
+	private String write(String fieldName, String value) throws IOException {
+		File file = File.createTempFile("openrdf-" + fieldName + "-", ".txt", directory);
+		Writer out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file), 65536), "UTF-8");
+		try {
+			out.write(value);
+		} finally {
+			out.close();
+		}
+		fileValues++;
+		fileBytes += file.length();
+		return file.getAbsolutePath();
+	}
+
+	/**
+	 * @return the number of large values kept in the rows
+	 */
+	public long getInlineValues() {
+		return inlineValues;
+	}
+
+	/**
+	 * @return the number of values written to files
+	 */
+	public long getFileValues() {
+		return fileValues;
+	}
+
+	public long getFileBytes() {
+		return fileBytes;
+	}
+
+	/**
+	 * @return the most bytes large values took in the rows on their way downstream at any time
+	 */
+	public long getPeakBytes() {
+		return peakBytes;
+	}
+
+}
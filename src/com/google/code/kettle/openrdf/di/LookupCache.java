@@ -0,0 +1,139 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the values looked up for each key.
+ *
+ * When the whole mapping was preloaded, every key is answered from the preloaded map and a key that
+ * is not in it does not exist. Otherwise the most recently used keys are kept, up to a maximum,
+ * and keys that were looked up without a match are remembered as such.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class LookupCache {
+
+	/**
+	 * Returned for keys that are known to have no match in the repository.
+	 */
+	public static final String[] NOT_FOUND = new String[0];
+
+	private final int maxEntries;
+	private CompactLookupMap preloaded;
+	private Map<String, String[]> recent;
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param maxEntries the maximum number of keys to preload or keep
+	 */
+	public LookupCache(final int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.recent = new LinkedHashMap<String, String[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Starts preloading the complete mapping.
+	 *
+	 * @param width the number of values per key
+	 */
+	public void startPreload(int width) {
+		preloaded = new CompactLookupMap(width);
+	}
+
+	/**
+	 * Adds a preloaded entry. The first solution for a key wins.
+	 *
+	 * @return false if the mapping has more keys than the cache may hold, in which case preloading is abandoned
+	 */
+	public boolean preload(String key, String[] values) {
+		preloaded.put(key, values);
+		if (preloaded.size() > maxEntries) {
+			abandonPreload();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Drops an incomplete preload, so keys are looked up instead.
+	 */
+	public void abandonPreload() {
+		preloaded = null;
+	}
+
+	public void finishPreload() {
+		preloaded.trim();
+	}
+
+	public boolean isPreloaded() {
+		return preloaded != null;
+	}
+
+	public int getPreloadedSize() {
+		return preloaded == null ? 0 : preloaded.size();
+	}
+
+	/**
+	 * A key counts as a hit when the cache knows its values, or knows it has none. A key that is not in a
+	 * preloaded map counts as a miss, even though it needs no lookup.
+	 *
+	 * @return the values for the key, {@link #NOT_FOUND} if the key has no match, or null if the key has to be looked up
+	 */
+	public String[] get(String key) {
+		if (preloaded != null) {
+			String[] values = preloaded.get(key);
+			if (values == null) {
+				misses++;
+				return NOT_FOUND;
+			}
+			hits++;
+			return values;
+		}
+		String[] values = recent.get(key);
+		if (values == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return values;
+	}
+
+	public void put(String key, String[] values) {
+		recent.put(key, values);
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+}
@@ -16,19 +16,40 @@
  */
 package com.google.code.kettle.openrdf.di;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
 import org.openrdf.model.Value;
+import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.TupleQueryResult;
 import org.openrdf.repository.RepositoryException;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.ntriples.NTriplesUtil;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.job.Job;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
@@ -47,6 +68,9 @@ import org.pentaho.di.trans.step.StepMetaInterface;
  */
 public class OpenRDFStep extends BaseStep implements StepInterface {
 
+	// what may follow the label of a literal in N-Triples: nothing, a language tag or a datatype IRI
+	private static final Pattern LITERAL_SUFFIX = Pattern.compile("(@[a-zA-Z]+(-[a-zA-Z0-9]+)*|\\^\\^<[^<>\"{}|^`\\\\\\s]+>)?");
+
 	public OpenRDFStep(StepMeta stepMeta, StepDataInterface stepDataInterface, int copyNr, TransMeta transMeta, Trans trans) {
 		super(stepMeta, stepDataInterface, copyNr, transMeta, trans);
 	}
@@ -74,16 +98,66 @@ public class OpenRDFStep extends BaseStep implements StepInterface {
 		OpenRDFStepMeta meta = (OpenRDFStepMeta) smi;
 		OpenRDFStepData data = (OpenRDFStepData) sdi;
 		boolean init = super.init(meta, data);
+		data.setCoordinator(CopyCoordinator.forStep(getTrans(), getStepname()));
 		try {
 			String repositoryURL = environmentSubstitute(meta.getRepositoryURL());
 			data.connect(repositoryURL);
+			String resultFormat = environmentSubstitute(meta.getResultFormat());
+			if (!Const.isEmpty(resultFormat) && !data.setResultFormat(resultFormat)) {
+				logError("Unknown query result format " + resultFormat + ", using the repository default");
+			}
+			List<String> defaultGraphs = splitList(environmentSubstitute(meta.getDefaultGraphs()));
+			List<String> namedGraphs = splitList(environmentSubstitute(meta.getNamedGraphs()));
+			int maxQueryTime = Const.toInt(environmentSubstitute(meta.getMaxQueryTime()), 0);
+			data.setExecutionProfile(meta.isIncludeInferred(), defaultGraphs, namedGraphs, maxQueryTime);
+			logBasic("Query profile: " + (meta.isIncludeInferred() ? "including" : "excluding") + " inferred statements, default graph "
+					+ (defaultGraphs.isEmpty() ? "unrestricted" : defaultGraphs.toString()) + ", named graphs "
+					+ (namedGraphs.isEmpty() ? "unrestricted" : namedGraphs.toString()) + ", "
+					+ (maxQueryTime > 0 ? "at most " + maxQueryTime + " s" : "no time limit") + " per query");
+			String maxQueries = environmentSubstitute(meta.getMaxConcurrentQueries());
+			if (Const.isEmpty(maxQueries)) {
+				maxQueries = getVariable(EndpointGovernor.MAX_QUERIES_VARIABLE);
+			}
+			int maxConcurrentQueries = Const.toInt(maxQueries, 0);
+			if (maxConcurrentQueries > 0) {
+				EndpointGovernor governor = EndpointGovernor.forRepository(repositoryURL, maxConcurrentQueries);
+				data.setGovernor(governor);
+				if (governor.isConflicting()) {
+					logBasic("Steps set different caps on concurrent queries against " + governor.getRepositoryURL() + ", the smallest, "
+							+ governor.getMaxQueries() + ", applies to all of them");
+				}
+				String message = "Capping concurrent queries against the repository at " + governor.getMaxQueries();
+				if (meta.isSpoolResults()) {
+					logDetailed(message);
+				} else {
+					logBasic(message + ", so results are spooled to disk before rows are passed on");
+				}
+			}
 		} catch (RepositoryException e) {
 			logError("Unable to initialise openRDF step ", e);
 			return false;
+		} catch (IllegalArgumentException e) {
+			logError("Unable to initialise openRDF step, invalid graph IRI: " + e.getMessage());
+			return false;
 		}
 		return init;
 	}	
 
+	/**
+	 * @return the graph IRIs or binding names in a list separated by commas or white space
+	 */
+	private static List<String> splitList(String list) {
+		List<String> items = new ArrayList<String>();
+		if (!Const.isEmpty(list)) {
+			for (String item : list.trim().split("[,\\s]+")) {
+				if (item.length() > 0) {
+					items.add(item);
+				}
+			}
+		}
+		return items;
+	}
+
 	/**
 	 * Once the transformation starts executing, the processRow() method is called repeatedly
 	 * by PDI for as long as it returns true. To indicate that a step has finished processing rows
@@ -108,29 +182,22 @@ public class OpenRDFStep extends BaseStep implements StepInterface {
 	public boolean processRow(StepMetaInterface smi, StepDataInterface sdi) throws KettleException {
 		OpenRDFStepMeta meta = (OpenRDFStepMeta) smi;
 		OpenRDFStepData data = (OpenRDFStepData) sdi;
+		if (meta.isLookup()) {
+			return processLookupRow(meta, data);
+		}
+		if (meta.isGraphPartitioned() && !Const.isEmpty(meta.getGraphField())) {
+			return processGraphRow(meta, data);
+		}
 		//This step generates rows
 		try {
-			String sqparql = environmentSubstitute(meta.getSparql());
-			data.runQuery(sqparql);
-			TupleQueryResult tupleQueryResult = data.getTupleQueryResult();
-			if (tupleQueryResult.hasNext()) {
-				List<String> fields = tupleQueryResult.getBindingNames();
-				while (tupleQueryResult.hasNext()) {
-					BindingSet bindingSet = tupleQueryResult.next();
-					Object[] outputRow = RowDataUtil.allocateRowData(fields.size());
-					RowMetaInterface outputRowMeta = new RowMeta();
-					for (int i=0; i<fields.size(); i++) {
-						String field = fields.get(i);
-						Value value = bindingSet.getValue(field);
-						if (value == null) {
-							outputRow[i] = null;
-						} else {
-							outputRow[i] = bindingSet.getValue(field).stringValue();
-						}
-						outputRowMeta.addValueMeta(i, new ValueMeta(field, ValueMeta.TYPE_STRING));
-					}
-					putRow(outputRowMeta, outputRow);
+			String sparql = prepareQuery(meta, data);
+			if (meta.isGraphPartitioned()) {
+				List<String> graphs = assignGraphs(meta, data);
+				for (int i = 0; i < graphs.size() && !isStopped(); i++) {
+					extract(meta, data, sparql, graphs.get(i));
 				}
+			} else {
+				extract(meta, data, sparql, null);
 			}
 		} catch (MalformedQueryException  e) {
 			throw new KettleException(e);
@@ -138,12 +205,830 @@ public class OpenRDFStep extends BaseStep implements StepInterface {
 			throw new KettleException(e);
 		} catch (RepositoryException e) {
 			throw new KettleException(e);
+		} catch (IOException e) {
+			throw new KettleException(e);
 		}
+		finishExtraction(meta, data);
 		//Indicate step is finished and processRow() should not be called again
 		setOutputDone();
 		return false;
 	}
 
+	/**
+	 * When the graphs to extract come from a field of the incoming rows, the query runs once for each row.
+	 * Kettle distributes the rows over the step copies, so each graph is extracted by one copy.
+	 */
+	private boolean processGraphRow(OpenRDFStepMeta meta, OpenRDFStepData data) throws KettleException {
+		Object[] row = getRow();
+		if (row == null) {
+			finishExtraction(meta, data);
+			setOutputDone();
+			return false;
+		}
+		try {
+			if (first) {
+				first = false;
+				String graphField = environmentSubstitute(meta.getGraphField());
+				data.setGraphFieldIndex(getInputRowMeta().indexOfValue(graphField));
+				if (data.getGraphFieldIndex() < 0) {
+					throw new KettleException("Graph field " + graphField + " not found in the incoming rows");
+				}
+				data.setPreparedQuery(prepareQuery(meta, data));
+			}
+			String graph = getInputRowMeta().getString(row, data.getGraphFieldIndex());
+			if (!Const.isEmpty(graph)) {
+				extract(meta, data, data.getPreparedQuery(), graph);
+			}
+		} catch (MalformedQueryException  e) {
+			throw new KettleException(e);
+		} catch (QueryEvaluationException e) {
+			throw new KettleException(e);
+		} catch (RepositoryException e) {
+			throw new KettleException(e);
+		} catch (IOException e) {
+			throw new KettleException(e);
+		}
+		return true;
+	}
+
+	/**
+	 * Applies the watermark and takes DISTINCT out of the query when it is done client side.
+	 */
+	private String prepareQuery(OpenRDFStepMeta meta, OpenRDFStepData data) throws KettleException, IOException {
+		String sqparql = environmentSubstitute(meta.getSparql());
+		if (meta.isDumping()) {
+			// statements go to the file as they are, without query rewrites
+			return sqparql;
+		}
+		if (meta.isIncremental()) {
+			sqparql = applyWatermark(meta, sqparql);
+		}
+		if (meta.isClientDistinct() && SparqlRewriter.hasSlice(sqparql)) {
+			// the server would cut the result before the duplicates are removed, returning fewer and other rows
+			logBasic("Keeping DISTINCT on the server, as the query has LIMIT or OFFSET");
+		} else if (meta.isClientDistinct()) {
+			if (SparqlRewriter.isDistinct(sqparql)) {
+				sqparql = SparqlRewriter.removeDistinct(sqparql);
+				long memoryBudget = Const.toLong(environmentSubstitute(meta.getDistinctMemorySize()), 64) * 1024 * 1024;
+				data.startDistinct(memoryBudget);
+				logDetailed("Removing duplicate rows client side, within " + memoryBudget + " bytes of memory");
+			}
+		}
+		return sqparql;
+	}
+
+	/**
+	 * Lists the named graphs and picks the share of this step copy.
+	 *
+	 * The first copy lists the graphs and the other copies use its list, so the store is only scanned once
+	 * and the copies agree on the assignment. Copies on other slave servers list the graphs themselves.
+	 */
+	private List<String> assignGraphs(OpenRDFStepMeta meta, OpenRDFStepData data) throws QueryEvaluationException, RepositoryException, MalformedQueryException {
+		CopyCoordinator coordinator = data.getCoordinator();
+		Map<String, Long> graphSizes;
+		synchronized (coordinator) {
+			graphSizes = coordinator.getGraphs();
+			if (graphSizes == null) {
+				graphSizes = meta.isGraphBalanceBySize() ? data.getGraphSizes() : data.getGraphs();
+				coordinator.setGraphs(graphSizes);
+			}
+		}
+		int copies = getUniqueStepCountAcrossSlaves();
+		int copy = getUniqueStepNrAcrossSlaves();
+		if (copies > getStepMeta().getCopies() && coordinator.claim("graphs")) {
+			logBasic("The copies on each slave server list the named graphs themselves, the graphs must not change while the copies start");
+		}
+		List<String> graphs = GraphPartitioner.assign(graphSizes, copies, copy);
+		logBasic("Extracting " + graphs.size() + " of " + graphSizes.size() + " named graphs in copy " + copy + " of " + copies);
+		return graphs;
+	}
+
+	/**
+	 * Runs the query, restricted to a named graph if one is given, and passes the solutions on as rows.
+	 */
+	private void extract(OpenRDFStepMeta meta, OpenRDFStepData data, String sparql, String graph) throws QueryEvaluationException, RepositoryException, MalformedQueryException, IOException, KettleException {
+		if (meta.isDumping()) {
+			dump(meta, data, sparql, graph);
+			return;
+		}
+		if (graph == null) {
+			data.runQuery(sparql);
+		} else {
+			logDetailed("Extracting named graph " + graph);
+			data.runQuery(sparql, graph);
+		}
+		// with a cap on concurrent queries the turn must be given up before rows go downstream, as a step
+		// further on may be waiting for a turn against the same repository
+		if (meta.isSpoolResults() || data.getGovernor() != null) {
+			spool(meta, data, graph != null);
+		}
+		TupleQueryResult tupleQueryResult = data.getTupleQueryResult();
+		List<String> fields = tupleQueryResult.getBindingNames();
+		RowMetaInterface outputRowMeta = data.getOutputRowMeta();
+		if (outputRowMeta == null) {
+			outputRowMeta = new RowMeta();
+			if (meta.isPivot()) {
+				meta.getPivotFields(outputRowMeta, getStepname(), this);
+				data.setPivot(createPivot(meta));
+			} else {
+				if (meta.isCompactingIris()) {
+					data.setIriCompactor(createIriCompactor(meta, sparql));
+				}
+				List<String> largeFields = meta.getLargeValueFields(fields, this);
+				for (int i=0; i<fields.size(); i++) {
+					boolean binary = meta.isLargeValueBinary() && largeFields.contains(fields.get(i));
+					outputRowMeta.addValueMeta(new ValueMeta(fields.get(i), binary ? ValueMeta.TYPE_BINARY : ValueMeta.TYPE_STRING));
+					if (IriCompactor.SPLIT.equals(meta.getIriCompaction())) {
+						outputRowMeta.addValueMeta(new ValueMeta(fields.get(i) + IriCompactor.NAMESPACE_SUFFIX, ValueMeta.TYPE_STRING));
+					}
+				}
+				if (!largeFields.isEmpty()) {
+					data.setLargeValueHandler(createLargeValueHandler(meta, outputRowMeta, largeFields));
+				}
+				if (meta.isDiffingSnapshot()) {
+					data.setSnapshotDiff(createSnapshotDiff(meta, outputRowMeta));
+					outputRowMeta.addValueMeta(new ValueMeta(environmentSubstitute(meta.getChangeField()), ValueMeta.TYPE_STRING));
+				}
+			}
+			data.setOutputRowMeta(outputRowMeta);
+		}
+		SnapshotDiff snapshotDiff = data.getSnapshotDiff();
+		LargeValueHandler largeValueHandler = data.getLargeValueHandler();
+		EntityPivot pivot = data.getPivot();
+		IriCompactor iriCompactor = data.getIriCompactor();
+		String watermarkBinding = meta.isIncremental() ? environmentSubstitute(meta.getWatermarkBinding()) : null;
+		while (tupleQueryResult.hasNext() && !isStopped()) {
+			BindingSet bindingSet = tupleQueryResult.next();
+			if (watermarkBinding != null) {
+				data.trackWatermark(bindingSet.getValue(watermarkBinding));
+			}
+			if (data.isDistinct() && data.isDuplicate(bindingSet, fields)) {
+				continue;
+			}
+			if (pivot != null) {
+				// a solution only reaches Kettle as part of the row of its subject
+				if (pivot.startsNewEntity(bindingSet)) {
+					putPivotRow(pivot, outputRowMeta);
+				}
+				pivot.add(bindingSet);
+				continue;
+			}
+			Object[] outputRow = RowDataUtil.allocateRowData(outputRowMeta.size());
+			if (iriCompactor != null) {
+				iriCompactor.fill(bindingSet, fields, outputRow);
+			} else {
+				for (int i=0; i<fields.size(); i++) {
+					Value value = bindingSet.getValue(fields.get(i));
+					if (value == null) {
+						outputRow[i] = null;
+					} else {
+						outputRow[i] = value.stringValue();
+					}
+				}
+			}
+			if (largeValueHandler != null) {
+				largeValueHandler.handle(outputRow);
+			}
+			if (snapshotDiff != null) {
+				String change = snapshotDiff.compare(outputRow);
+				if (change == null) {
+					continue;
+				}
+				outputRow[snapshotDiff.getWidth()] = change;
+			}
+			putRow(outputRowMeta, outputRow);
+		}
+		if (pivot != null && pivot.hasEntity()) {
+			putPivotRow(pivot, outputRowMeta);
+		}
+		data.closeQuery();
+	}
+
+	/**
+	 * Writes the statements of the query, or of the repository when there is no query, to the dump file.
+	 */
+	private void dump(OpenRDFStepMeta meta, OpenRDFStepData data, String sparql, String graph) throws QueryEvaluationException, RepositoryException, MalformedQueryException, KettleException {
+		RdfDump dump = openDump(meta, data);
+		if (graph != null) {
+			logDetailed("Dumping named graph " + graph);
+		}
+		try {
+			data.export(sparql, graph, dump);
+		} catch (RDFHandlerException e) {
+			throw new KettleException("Unable to write the dump file", e);
+		}
+	}
+
+	/**
+	 * Opens the dump file on first use. Each step copy writes a file of its own.
+	 */
+	private RdfDump openDump(OpenRDFStepMeta meta, OpenRDFStepData data) throws KettleException {
+		if (data.getDump() != null) {
+			return data.getDump();
+		}
+		String formatName = environmentSubstitute(meta.getDumpFormat());
+		RDFFormat format = RdfDump.getFormat(formatName);
+		if (format == null) {
+			throw new KettleException("There is no writer for RDF format " + formatName + " on the classpath");
+		}
+		String filename = environmentSubstitute(meta.getDumpFile());
+		if (getUniqueStepCountAcrossSlaves() > 1) {
+			int extension = filename.indexOf('.', filename.lastIndexOf('/') + 1);
+			if (extension < 0) {
+				extension = filename.length();
+			}
+			filename = filename.substring(0, extension) + "_" + getUniqueStepNrAcrossSlaves() + filename.substring(extension);
+		}
+		OutputStream out = null;
+		try {
+			out = KettleVFS.getOutputStream(filename, false);
+			RdfDump dump = new RdfDump(out, format, meta.isDumpCompressed());
+			data.setDump(dump);
+			data.setDumpFile(filename);
+			logBasic("Dumping " + format.getName() + (meta.isDumpCompressed() ? " (gzipped)" : "") + " to " + filename);
+			return dump;
+		} catch (IOException e) {
+			closeQuietly(out);
+			throw new KettleException("Unable to open dump file " + filename, e);
+		} catch (RDFHandlerException e) {
+			closeQuietly(out);
+			throw new KettleException("Unable to open dump file " + filename, e);
+		}
+	}
+
+	/**
+	 * Completes the dump file and passes on a single row describing it.
+	 */
+	private void finishDump(OpenRDFStepMeta meta, OpenRDFStepData data) throws KettleException {
+		RdfDump dump = openDump(meta, data);
+		try {
+			dump.close();
+		} catch (IOException e) {
+			throw new KettleException("Unable to complete dump file " + data.getDumpFile(), e);
+		} catch (RDFHandlerException e) {
+			throw new KettleException("Unable to complete dump file " + data.getDumpFile(), e);
+		} finally {
+			data.setDump(null);
+		}
+		long duration = dump.getDuration();
+		logBasic("Dumped " + dump.getStatements() + " statements, " + dump.getBytes() + " bytes in " + duration + " ms"
+				+ (duration > 0 ? String.format(" (%.1f MB/s)", dump.getBytes() / 1000.0 / duration) : ""));
+		RowMetaInterface outputRowMeta = new RowMeta();
+		meta.getDumpFields(outputRowMeta, getStepname());
+		Object[] outputRow = RowDataUtil.allocateRowData(outputRowMeta.size());
+		outputRow[0] = data.getDumpFile();
+		outputRow[1] = Long.valueOf(dump.getStatements());
+		outputRow[2] = Long.valueOf(dump.getBytes());
+		outputRow[3] = Long.valueOf(duration);
+		putRow(outputRowMeta, outputRow);
+	}
+
+	/**
+	 * Adds a companion field per binding that may hold large values, for the path of the file the value went to.
+	 */
+	private LargeValueHandler createLargeValueHandler(OpenRDFStepMeta meta, RowMetaInterface outputRowMeta, List<String> largeFields) {
+		int[] positions = new int[largeFields.size()];
+		int filePosition = outputRowMeta.size();
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = outputRowMeta.indexOfValue(largeFields.get(i));
+			outputRowMeta.addValueMeta(new ValueMeta(largeFields.get(i) + LargeValueHandler.FILE_SUFFIX, ValueMeta.TYPE_STRING));
+		}
+		int threshold = Const.toInt(environmentSubstitute(meta.getLargeValueThreshold()), Integer.MAX_VALUE);
+		String directory = environmentSubstitute(meta.getLargeValueDirectory());
+		long budget = Const.toLong(environmentSubstitute(meta.getLargeValueBudget()), 64) * 1024 * 1024;
+		// the rows that may sit in the buffer of every step this one passes rows to, plus the one being passed on
+		int bufferedRows = (getTransMeta().getSizeRowset() + 1) * Math.max(1, getOutputRowSets().size());
+		logDetailed("Keeping values over " + threshold + " characters of " + largeFields + " out of the rows"
+				+ (meta.isLargeValueBinary() ? ", binary within " + budget + " bytes" : ""));
+		return new LargeValueHandler(positions, largeFields.toArray(new String[positions.length]), filePosition, threshold,
+				meta.isLargeValueBinary(), Const.isEmpty(directory) ? null : new File(directory), budget, bufferedRows);
+	}
+
+	/**
+	 * Opens the snapshot of the previous run. Every step copy keeps a snapshot of its own, so the copies
+	 * must extract the same rows from run to run, which they do not when the graphs are partitioned.
+	 */
+	private SnapshotDiff createSnapshotDiff(OpenRDFStepMeta meta, RowMetaInterface outputRowMeta) throws KettleException, IOException {
+		if (meta.isGraphPartitioned() && getUniqueStepCountAcrossSlaves() > 1) {
+			throw new KettleException("A snapshot diff can not be used with named graphs partitioned over several step copies");
+		}
+		List<Integer> keyPositions = new ArrayList<Integer>();
+		for (String key : splitList(environmentSubstitute(meta.getSnapshotKeys()))) {
+			int position = outputRowMeta.indexOfValue(key);
+			if (position < 0) {
+				throw new KettleException("Snapshot key " + key + " is not bound by the query");
+			}
+			keyPositions.add(position);
+			int namespacePosition = outputRowMeta.indexOfValue(key + IriCompactor.NAMESPACE_SUFFIX);
+			if (namespacePosition >= 0) {
+				keyPositions.add(namespacePosition);
+			}
+		}
+		int[] positions = new int[keyPositions.size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = keyPositions.get(i);
+		}
+		String snapshotFile = environmentSubstitute(meta.getSnapshotFile());
+		if (getUniqueStepCountAcrossSlaves() > 1) {
+			snapshotFile += "." + getUniqueStepNrAcrossSlaves();
+		}
+		SnapshotDiff snapshotDiff = new SnapshotDiff(new File(snapshotFile), positions, outputRowMeta.size());
+		logBasic("Comparing with snapshot " + snapshotFile + " of " + snapshotDiff.getPreviousRows() + " rows");
+		return snapshotDiff;
+	}
+
+	/**
+	 * Passes on the rows of the previous snapshot that did not come back, and prepares the snapshot of this
+	 * run. It only becomes the one to compare the next run with once the whole transformation delivered
+	 * every row, so rows that failed downstream come up again in the next run.
+	 */
+	private void finishSnapshotDiff(OpenRDFStepData data) throws KettleException {
+		final SnapshotDiff snapshotDiff = data.getSnapshotDiff();
+		try {
+			int[] keyPositions = snapshotDiff.getKeyPositions();
+			String[] keys;
+			while (!isStopped() && (keys = snapshotDiff.nextDeleted()) != null) {
+				Object[] outputRow = RowDataUtil.allocateRowData(data.getOutputRowMeta().size());
+				for (int i = 0; i < keyPositions.length; i++) {
+					outputRow[keyPositions[i]] = keys[i];
+				}
+				outputRow[snapshotDiff.getWidth()] = SnapshotDiff.DELETED;
+				putRow(data.getOutputRowMeta(), outputRow);
+			}
+			if (isStopped() || getErrors() > 0) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			snapshotDiff.prepare();
+			data.setSnapshotDiff(null);
+			logBasic("Snapshot diff: " + snapshotDiff.getInserted() + " new, " + snapshotDiff.getChanged() + " changed, " + snapshotDiff.getDeleted()
+					+ " deleted, " + snapshotDiff.getUnchanged() + " unchanged rows, new snapshot written in " + (System.currentTimeMillis() - start) + " ms");
+			data.getCoordinator().onCompletion(new CopyCoordinator.Completion() {
+				public void succeeded() {
+					try {
+						snapshotDiff.commit();
+					} catch (IOException e) {
+						logError("Unable to replace the snapshot " + snapshotDiff.getSnapshotFile(), e);
+					}
+				}
+
+				public void failed() {
+					snapshotDiff.abort();
+					logBasic("The transformation did not complete, snapshot " + snapshotDiff.getSnapshotFile() + " unchanged");
+				}
+			});
+		} catch (IOException e) {
+			throw new KettleException("Unable to update the snapshot", e);
+		}
+	}
+
+	/**
+	 * The prefixes declared in the query come first, the namespace table adds to them.
+	 */
+	private IriCompactor createIriCompactor(OpenRDFStepMeta meta, String sparql) {
+		IriCompactor iriCompactor = new IriCompactor(meta.getIriCompaction());
+		for (Map.Entry<String, String> prefix : SparqlRewriter.getPrefixes(sparql).entrySet()) {
+			iriCompactor.addNamespace(prefix.getKey(), prefix.getValue());
+		}
+		for (int i = 0; i < meta.getNamespacePrefixes().length; i++) {
+			iriCompactor.addNamespace(environmentSubstitute(meta.getNamespacePrefixes()[i]), environmentSubstitute(meta.getNamespaceIRIs()[i]));
+		}
+		return iriCompactor;
+	}
+
+	private EntityPivot createPivot(OpenRDFStepMeta meta) {
+		String[] predicates = new String[meta.getPivotPredicates().length];
+		for (int i = 0; i < predicates.length; i++) {
+			predicates[i] = environmentSubstitute(meta.getPivotPredicates()[i]);
+		}
+		return new EntityPivot(environmentSubstitute(meta.getPivotSubjectBinding()), environmentSubstitute(meta.getPivotPredicateBinding()),
+				environmentSubstitute(meta.getPivotObjectBinding()), predicates, meta.getPivotAggregations(), environmentSubstitute(meta.getPivotSeparator()));
+	}
+
+	private void putPivotRow(EntityPivot pivot, RowMetaInterface outputRowMeta) throws KettleStepException {
+		Object[] outputRow = RowDataUtil.allocateRowData(pivot.getWidth());
+		pivot.fill(outputRow);
+		putRow(outputRowMeta, outputRow);
+	}
+
+	/**
+	 * Receives the whole result to disk before passing on any row, so the server is done with the query
+	 * however slowly the steps downstream take the rows.
+	 */
+	private void spool(OpenRDFStepMeta meta, OpenRDFStepData data, boolean quiet) throws QueryEvaluationException, IOException {
+		String spoolDirectory = environmentSubstitute(meta.getSpoolDirectory());
+		long start = System.currentTimeMillis();
+		ResultSpool spool = data.spoolResult(Const.isEmpty(spoolDirectory) ? null : new File(spoolDirectory));
+		String message = "Spooled " + spool.getRows() + " rows, " + spool.getSize() + " bytes to " + spool.getFile()
+				+ " in " + (System.currentTimeMillis() - start) + " ms";
+		if (quiet) {
+			logDetailed(message);
+		} else {
+			logBasic(message);
+		}
+	}
+
+	/**
+	 * Reports on the extraction and, when every row was delivered, moves the watermark forward.
+	 */
+	private void finishExtraction(OpenRDFStepMeta meta, OpenRDFStepData data) throws KettleException {
+		if (meta.isDumping()) {
+			if (!isStopped() && getErrors() == 0) {
+				finishDump(meta, data);
+			}
+			return;
+		}
+		if (data.getPivot() != null) {
+			logBasic("Pivoted the solutions into " + data.getPivot().getEntities() + " subject rows");
+		}
+		IriCompactor iriCompactor = data.getIriCompactor();
+		if (iriCompactor != null && iriCompactor.getRows() > 0) {
+			double before = iriCompactor.getBytesPerRowBefore();
+			double after = iriCompactor.getBytesPerRowAfter();
+			logBasic(String.format("IRI compaction: %.1f bytes per row before, %.1f after in UTF-8, %.0f%% less over %d rows, %d bytes less to sort or spill",
+					before, after, before == 0 ? 0 : 100 * (before - after) / before, iriCompactor.getRows(), iriCompactor.getBytesSaved()));
+		}
+		LargeValueHandler largeValueHandler = data.getLargeValueHandler();
+		if (largeValueHandler != null) {
+			logBasic("Large values: " + largeValueHandler.getFileValues() + " written to files (" + largeValueHandler.getFileBytes() + " bytes), "
+					+ largeValueHandler.getInlineValues() + " kept in the rows, at most " + largeValueHandler.getPeakBytes() + " bytes on their way downstream");
+		}
+		if (data.isDistinct()) {
+			logBasic("Removed " + data.getDuplicateRows() + " duplicate rows client side, " + data.getDistinctRows().size() + " distinct rows"
+					+ (data.getDistinctRows().isSpilled() ? " (fingerprints spilled to disk)" : ""));
+		}
+		if (data.getSnapshotDiff() != null && !isStopped() && getErrors() == 0) {
+			finishSnapshotDiff(data);
+		}
+		if (meta.isIncremental() && !isStopped() && getErrors() == 0) {
+			commitWatermark(meta, data);
+		}
+	}
+
+	/**
+	 * Only moves the watermark forward once the whole transformation delivered every row, so rows that
+	 * failed downstream are extracted again by the next run. The first copy to get here stores the
+	 * highest watermark of all copies.
+	 */
+	private void commitWatermark(final OpenRDFStepMeta meta, OpenRDFStepData data) {
+		final CopyCoordinator coordinator = data.getCoordinator();
+		coordinator.offerWatermark(data.getWatermark());
+		if (!coordinator.claim("watermark")) {
+			return;
+		}
+		coordinator.onCompletion(new CopyCoordinator.Completion() {
+			public void succeeded() {
+				try {
+					storeWatermark(meta, coordinator.getWatermark());
+				} catch (KettleException e) {
+					logError("Unable to store the watermark", e);
+				}
+			}
+
+			public void failed() {
+				logBasic("The transformation did not complete, watermark unchanged");
+			}
+		});
+	}
+
+	/**
+	 * In lookup mode each incoming row is enriched with the values the query binds for the row's key.
+	 * Rows are collected into batches, so keys missing from the cache are looked up with one query per batch.
+	 */
+	private boolean processLookupRow(OpenRDFStepMeta meta, OpenRDFStepData data) throws KettleException {
+		Object[] row = getRow();
+		if (first) {
+			first = false;
+			if (row == null) {
+				setOutputDone();
+				return false;
+			}
+			prepareLookup(meta, data);
+		}
+		if (row != null) {
+			data.getPendingRows().add(row);
+			if (data.getPendingRows().size() < data.getLookupBatchSize()) {
+				return true;
+			}
+		}
+		flushLookupRows(meta, data);
+		if (row == null) {
+			LookupCache cache = data.getLookupCache();
+			logBasic("Lookup cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses, " + data.getLookupQueries() + " lookup queries"
+					+ (cache.isPreloaded() ? ", " + cache.getPreloadedSize() + " keys preloaded" : ""));
+			setOutputDone();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the key field, works out the looked up fields and, if asked to, preloads the complete mapping.
+	 */
+	private void prepareLookup(OpenRDFStepMeta meta, OpenRDFStepData data) throws KettleException {
+		String keyField = environmentSubstitute(meta.getLookupKeyField());
+		int keyIndex = getInputRowMeta().indexOfValue(keyField);
+		if (keyIndex < 0) {
+			throw new KettleException("Lookup key field " + keyField + " not found in the incoming rows");
+		}
+		String keyBinding = environmentSubstitute(meta.getLookupKeyBinding());
+		int cacheSize = Const.toInt(environmentSubstitute(meta.getLookupCacheSize()), 100000);
+		int batchSize = Math.max(1, Const.toInt(environmentSubstitute(meta.getLookupBatchSize()), 100));
+		String sparql = environmentSubstitute(meta.getSparql());
+		data.startLookup(keyIndex, keyBinding, sparql, cacheSize, batchSize);
+		LookupCache cache = data.getLookupCache();
+		try {
+			if (meta.isLookupPreload()) {
+				data.runQuery(sparql);
+				TupleQueryResult tupleQueryResult = data.getTupleQueryResult();
+				data.setLookupBindings(tupleQueryResult.getBindingNames());
+				cache.startPreload(data.getLookupBindings().size());
+				boolean complete = true;
+				while (complete && tupleQueryResult.hasNext() && !isStopped()) {
+					BindingSet bindingSet = tupleQueryResult.next();
+					Value key = bindingSet.getValue(keyBinding);
+					if (key != null) {
+						complete = cache.preload(key.stringValue(), data.getLookupValues(bindingSet));
+					}
+				}
+				data.closeQuery();
+				if (isStopped()) {
+					// the mapping may be incomplete, so it can not tell which keys have no match
+					cache.abandonPreload();
+				} else if (complete) {
+					cache.finishPreload();
+					logBasic("Preloaded " + cache.getPreloadedSize() + " lookup keys");
+				} else {
+					logBasic("More than " + cacheSize + " lookup keys, looking keys up " + batchSize + " at a time instead");
+				}
+			} else {
+				// A query that cannot match anything still reports its bindings
+				data.runQuery(SparqlRewriter.addFilter(sparql, "false"));
+				data.setLookupBindings(data.getTupleQueryResult().getBindingNames());
+				data.closeQuery();
+			}
+		} catch (IllegalArgumentException e) {
+			throw new KettleException(e.getMessage(), e);
+		} catch (MalformedQueryException e) {
+			throw new KettleException(e);
+		} catch (QueryEvaluationException e) {
+			throw new KettleException(e);
+		} catch (RepositoryException e) {
+			throw new KettleException(e);
+		}
+		RowMetaInterface outputRowMeta = getInputRowMeta().clone();
+		for (String binding : data.getLookupBindings()) {
+			outputRowMeta.addValueMeta(new ValueMeta(binding, ValueMeta.TYPE_STRING));
+		}
+		data.setOutputRowMeta(outputRowMeta);
+	}
+
+	/**
+	 * Looks up the keys of the pending rows that are not cached, and passes the rows on.
+	 */
+	private void flushLookupRows(OpenRDFStepMeta meta, OpenRDFStepData data) throws KettleException {
+		List<Object[]> rows = data.getPendingRows();
+		RowMetaInterface inputRowMeta = getInputRowMeta();
+		LookupCache cache = data.getLookupCache();
+		String[] keys = new String[rows.size()];
+		String[][] values = new String[rows.size()][];
+		Map<String, String[]> missing = new LinkedHashMap<String, String[]>();
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = inputRowMeta.getString(rows.get(i), data.getLookupKeyIndex());
+			if (keys[i] != null) {
+				values[i] = cache.get(keys[i]);
+				if (values[i] == null) {
+					missing.put(keys[i], null);
+				}
+			}
+		}
+		if (!missing.isEmpty()) {
+			fetchLookupValues(meta, data, missing);
+		}
+		RowMetaInterface outputRowMeta = data.getOutputRowMeta();
+		int inputSize = inputRowMeta.size();
+		int width = data.getLookupBindings().size();
+		for (int i = 0; i < keys.length; i++) {
+			String[] rowValues = values[i];
+			if (rowValues == null && keys[i] != null) {
+				rowValues = missing.get(keys[i]);
+			}
+			Object[] outputRow = RowDataUtil.resizeArray(rows.get(i), outputRowMeta.size());
+			for (int j = 0; j < width; j++) {
+				outputRow[inputSize + j] = rowValues != null && j < rowValues.length ? rowValues[j] : null;
+			}
+			putRow(outputRowMeta, outputRow);
+		}
+		rows.clear();
+	}
+
+	/**
+	 * Looks up the missing keys with a single query and caches the outcome, including keys without a match.
+	 *
+	 * Keys that are not IRIs are compared with the lexical form of the key binding, so they match literals
+	 * of any datatype or language, such as xsd:string literals in RDF 1.1 stores.
+	 */
+	private void fetchLookupValues(OpenRDFStepMeta meta, OpenRDFStepData data, Map<String, String[]> missing) throws KettleException {
+		StringBuilder keyList = new StringBuilder();
+		for (String key : missing.keySet()) {
+			String term;
+			if (!meta.isLookupKeyIRI()) {
+				term = '"' + NTriplesUtil.escapeString(key) + '"';
+			} else if (SparqlRewriter.isIri(key)) {
+				term = NTriplesUtil.toNTriplesString(ValueFactoryImpl.getInstance().createURI(key));
+			} else {
+				// it can not be in the repository, and must not end up in the query as it is
+				logDetailed("Lookup key " + key + " is not a valid IRI, no values for it");
+				continue;
+			}
+			if (keyList.length() > 0) {
+				keyList.append(", ");
+			}
+			keyList.append(term);
+		}
+		if (keyList.length() == 0) {
+			cacheLookupValues(data, missing);
+			return;
+		}
+		String keyBinding = data.getLookupKeyBinding();
+		String key = meta.isLookupKeyIRI() ? "?" + keyBinding : "STR(?" + keyBinding + ")";
+		try {
+			data.runQuery(SparqlRewriter.addFilter(data.getLookupSparql(), key + " IN (" + keyList + ")"));
+			data.incrementLookupQueries();
+			TupleQueryResult tupleQueryResult = data.getTupleQueryResult();
+			while (tupleQueryResult.hasNext()) {
+				BindingSet bindingSet = tupleQueryResult.next();
+				Value value = bindingSet.getValue(keyBinding);
+				if (value != null && missing.containsKey(value.stringValue()) && missing.get(value.stringValue()) == null) {
+					missing.put(value.stringValue(), data.getLookupValues(bindingSet));
+				}
+			}
+			data.closeQuery();
+		} catch (IllegalArgumentException e) {
+			throw new KettleException(e.getMessage(), e);
+		} catch (MalformedQueryException e) {
+			throw new KettleException(e);
+		} catch (QueryEvaluationException e) {
+			throw new KettleException(e);
+		} catch (RepositoryException e) {
+			throw new KettleException(e);
+		}
+		cacheLookupValues(data, missing);
+	}
+
+	/**
+	 * Caches the outcome of a lookup, including the keys without a match.
+	 */
+	private void cacheLookupValues(OpenRDFStepData data, Map<String, String[]> missing) {
+		LookupCache cache = data.getLookupCache();
+		for (Map.Entry<String, String[]> entry : missing.entrySet()) {
+			if (entry.getValue() == null) {
+				entry.setValue(LookupCache.NOT_FOUND);
+			}
+			cache.put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Restricts the query to solutions above the last stored high-water mark.
+	 * The first run, with no stored watermark, extracts everything.
+	 *
+	 * The comparison is strict, so a solution that only shows up after a run committed a watermark equal
+	 * to its own value is never extracted. The watermark should grow with every change, such as a
+	 * modification time of enough precision or a sequence number.
+	 */
+	private String applyWatermark(OpenRDFStepMeta meta, String sparql) throws KettleException {
+		Value stored = loadWatermark(meta);
+		if (stored == null) {
+			logBasic("No watermark stored yet, running a full extraction");
+			return sparql;
+		}
+		String watermark = NTriplesUtil.toNTriplesString(stored);
+		String watermarkBinding = environmentSubstitute(meta.getWatermarkBinding());
+		if (SparqlRewriter.isProjectedExpression(sparql, watermarkBinding)) {
+			// a FILTER in the WHERE clause can not see values computed in the SELECT clause, it would drop every solution
+			throw new KettleException("Watermark binding ?" + watermarkBinding + " is computed in the SELECT clause, such as by an aggregate. "
+					+ "Bind the watermark in the WHERE clause instead.");
+		}
+		logBasic("Extracting solutions with ?" + watermarkBinding + " above watermark " + watermark);
+		try {
+			return SparqlRewriter.addFilter(sparql, "?" + environmentSubstitute(meta.getWatermarkBinding()) + " > " + watermark);
+		} catch (IllegalArgumentException e) {
+			throw new KettleException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads the watermark, in N-Triples syntax, from the watermark file if there is one, otherwise from the variable.
+	 *
+	 * @return the watermark, or null when none is stored yet
+	 */
+	private Value loadWatermark(OpenRDFStepMeta meta) throws KettleException {
+		String filename = environmentSubstitute(meta.getWatermarkFile());
+		if (!Const.isEmpty(filename)) {
+			if (!KettleVFS.fileExists(filename)) {
+				return null;
+			}
+			InputStream in = null;
+			try {
+				in = KettleVFS.getInputStream(filename);
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+				return parseWatermark(reader.readLine(), "watermark file " + filename);
+			} catch (IOException e) {
+				throw new KettleException("Unable to read watermark file " + filename, e);
+			} finally {
+				closeQuietly(in);
+			}
+		}
+		String variable = environmentSubstitute(meta.getWatermarkVariable());
+		if (!Const.isEmpty(variable)) {
+			return parseWatermark(getVariable(variable), "watermark variable " + variable);
+		}
+		return null;
+	}
+
+	/**
+	 * Parses a stored watermark, so only a single IRI or literal ever makes it into the query.
+	 *
+	 * @param source the file or variable the watermark came from, for the error message
+	 */
+	private static Value parseWatermark(String text, String source) throws KettleException {
+		if (text == null || text.trim().length() == 0) {
+			return null;
+		}
+		Value watermark;
+		try {
+			watermark = NTriplesUtil.parseValue(text.trim(), ValueFactoryImpl.getInstance());
+		} catch (IllegalArgumentException e) {
+			throw new KettleException("The " + source + " does not hold an N-Triples IRI or literal: " + text, e);
+		}
+		boolean valid;
+		if (watermark instanceof URI) {
+			valid = SparqlRewriter.isIri(watermark.stringValue());
+		} else if (watermark instanceof Literal) {
+			// the parser ignores what follows the literal, so check it is no more than a language or datatype
+			String literal = text.trim();
+			int end = 1;
+			while (end < literal.length() && literal.charAt(end) != '"') {
+				end += literal.charAt(end) == '\\' ? 2 : 1;
+			}
+			valid = end < literal.length() && LITERAL_SUFFIX.matcher(literal.substring(end + 1)).matches()
+					&& (((Literal) watermark).getDatatype() == null || SparqlRewriter.isIri(((Literal) watermark).getDatatype().stringValue()));
+		} else {
+			valid = false;
+		}
+		if (!valid) {
+			throw new KettleException("The " + source + " does not hold an N-Triples IRI or literal: " + text);
+		}
+		return watermark;
+	}
+
+	/**
+	 * Records the highest watermark value of this run in the watermark file and/or variable.
+	 * The stored watermark is left alone when the run returned no rows.
+	 */
+	private void storeWatermark(OpenRDFStepMeta meta, Value highest) throws KettleException {
+		if (highest == null) {
+			logBasic("No new rows, watermark unchanged");
+			return;
+		}
+		String watermark = NTriplesUtil.toNTriplesString(highest);
+		String filename = environmentSubstitute(meta.getWatermarkFile());
+		if (!Const.isEmpty(filename)) {
+			OutputStream out = null;
+			try {
+				out = KettleVFS.getOutputStream(filename, false);
+				out.write((watermark + Const.CR).getBytes("UTF-8"));
+			} catch (IOException e) {
+				throw new KettleException("Unable to write watermark file " + filename, e);
+			} finally {
+				closeQuietly(out);
+			}
+		}
+		String variable = environmentSubstitute(meta.getWatermarkVariable());
+		if (!Const.isEmpty(variable)) {
+			// Same scope as the root job option of the Set Variables step, so the next run in this JVM sees it
+			setVariable(variable, watermark);
+			getTrans().setVariable(variable, watermark);
+			Job parentJob = getTrans().getParentJob();
+			while (parentJob != null) {
+				parentJob.setVariable(variable, watermark);
+				parentJob = parentJob.getParentJob();
+			}
+		}
+		logBasic("Stored new watermark " + watermark);
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			if (closeable != null) {
+				closeable.close();
+			}
+		} catch (IOException ignore) {
+
+		}
+	}
+
 	/**
 	 * This method is called by PDI once the step is done processing. 
 	 * 
@@ -162,6 +1047,10 @@ public class OpenRDFStep extends BaseStep implements StepInterface {
 		OpenRDFStepMeta meta = (OpenRDFStepMeta) smi;
 		OpenRDFStepData data = (OpenRDFStepData) sdi;
 		data.disconnect();
+		if (data.getGovernor() != null) {
+			logBasic("Waited " + (data.getGovernorWait() / 1000000) + " ms in line for " + data.getGovernedQueries() + " queries, "
+					+ data.getGovernor().getWaiting() + " queries still waiting for the repository");
+		}
 		super.dispose(meta, data);
 	}
 	
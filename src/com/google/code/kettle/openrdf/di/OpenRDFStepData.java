@@ -16,15 +16,36 @@
  */
 package com.google.code.kettle.openrdf.di;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.GraphQuery;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryLanguage;
 import org.openrdf.query.TupleQuery;
 import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.algebra.evaluation.util.ValueComparator;
+import org.openrdf.query.impl.DatasetImpl;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryResult;
 import org.openrdf.repository.http.HTTPRepository;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -40,6 +61,36 @@ public class OpenRDFStepData extends BaseStepData implements StepDataInterface {
 	private Repository repository;
 	private RepositoryConnection connection;
 	private TupleQueryResult tupleQueryResult;
+	private RowMetaInterface outputRowMeta;
+	private ValueComparator valueComparator;
+	private Value watermark;
+	private RowFingerprintSet distinctRows;
+	private RowHasher rowHasher;
+	private long duplicateRows;
+	private LookupCache lookupCache;
+	private List<Object[]> pendingRows;
+	private int lookupKeyIndex;
+	private String lookupKeyBinding;
+	private String lookupSparql;
+	private int lookupBatchSize;
+	private List<String> lookupBindings;
+	private long lookupQueries;
+	private int graphFieldIndex;
+	private String preparedQuery;
+	private EndpointGovernor governor;
+	private boolean admitted;
+	private long governorWait;
+	private long governedQueries;
+	private EntityPivot pivot;
+	private IriCompactor iriCompactor;
+	private SnapshotDiff snapshotDiff;
+	private CopyCoordinator coordinator;
+	private LargeValueHandler largeValueHandler;
+	private RdfDump dump;
+	private String dumpFile;
+	private boolean includeInferred = true;
+	private int maxQueryTime;
+	private DatasetImpl dataset;
 
 	public OpenRDFStepData() {
 
@@ -55,9 +106,61 @@ public class OpenRDFStepData extends BaseStepData implements StepDataInterface {
 		}
 	}
 	
+	/**
+	 * Asks the server for query results in the named format, such as BINARY or SPARQL/XML.
+	 *
+	 * @return false if the format is unknown, in which case the repository default is kept
+	 */
+	public boolean setResultFormat(String formatName) {
+		for (TupleQueryResultFormat format : TupleQueryResultFormat.values()) {
+			if (format.getName().equalsIgnoreCase(formatName)) {
+				((HTTPRepository) repository).setPreferredTupleQueryResultFormat(format);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sets how every query of this step is evaluated.
+	 *
+	 * @param defaultGraphs the graphs making up the default graph, or empty for the repository default
+	 * @param namedGraphs the graphs GRAPH patterns may match, or empty for all
+	 * @param maxQueryTime the time in seconds after which the server stops a query, or 0 for no limit
+	 * @throws IllegalArgumentException if one of the graphs is not an IRI
+	 */
+	public void setExecutionProfile(boolean includeInferred, List<String> defaultGraphs, List<String> namedGraphs, int maxQueryTime) {
+		this.includeInferred = includeInferred;
+		this.maxQueryTime = maxQueryTime;
+		if (defaultGraphs.isEmpty() && namedGraphs.isEmpty()) {
+			this.dataset = null;
+			return;
+		}
+		this.dataset = new DatasetImpl();
+		for (String graph : defaultGraphs) {
+			dataset.addDefaultGraph(repository.getValueFactory().createURI(graph));
+		}
+		for (String graph : namedGraphs) {
+			dataset.addNamedGraph(repository.getValueFactory().createURI(graph));
+		}
+	}
+
 	public void disconnect() {
+		if (distinctRows != null) {
+			distinctRows.close();
+			distinctRows = null;
+		}
+		if (snapshotDiff != null) {
+			// the run did not complete, so the previous snapshot stays
+			snapshotDiff.abort();
+			snapshotDiff = null;
+		}
+		if (dump != null) {
+			dump.abort();
+			dump = null;
+		}
 		try {
-			this.tupleQueryResult.close();
+			closeQuery();
 			this.connection.close();
 			this.repository.shutDown();
 		} catch (Throwable ignore) {
@@ -66,12 +169,454 @@ public class OpenRDFStepData extends BaseStepData implements StepDataInterface {
 	}
 	
 	public void runQuery(String sparql) throws QueryEvaluationException, RepositoryException, MalformedQueryException {
-		TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, sparql);
-		this.tupleQueryResult = tupleQuery.evaluate();
+		runQuery(sparql, null);
+	}
+
+	/**
+	 * Runs the query against a single named graph, which then is both the default graph and the only named graph.
+	 * Without a graph the dataset of the execution profile applies.
+	 *
+	 * @param graph the IRI of the named graph, or null to query the whole repository
+	 */
+	public void runQuery(String sparql, String graph) throws QueryEvaluationException, RepositoryException, MalformedQueryException {
+		closeQuery();
+		admit();
+		boolean evaluated = false;
+		try {
+			TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, sparql);
+			tupleQuery.setIncludeInferred(includeInferred);
+			if (maxQueryTime > 0) {
+				tupleQuery.setMaxQueryTime(maxQueryTime);
+			}
+			if (graph != null) {
+				URI graphURI = repository.getValueFactory().createURI(graph);
+				DatasetImpl graphDataset = new DatasetImpl();
+				graphDataset.addDefaultGraph(graphURI);
+				graphDataset.addNamedGraph(graphURI);
+				tupleQuery.setDataset(graphDataset);
+			} else if (dataset != null) {
+				tupleQuery.setDataset(dataset);
+			}
+			this.tupleQueryResult = tupleQuery.evaluate();
+			evaluated = true;
+		} finally {
+			if (!evaluated) {
+				leave();
+			}
+		}
+	}
+
+	/**
+	 * Streams statements straight to the handler. Without a query the statements of the repository are
+	 * exported, from the named graph if one is given, otherwise from the named graphs of the execution profile.
+	 *
+	 * @param sparql a CONSTRUCT or DESCRIBE query, or empty to export statements
+	 * @param graph the IRI of the named graph, or null for the whole repository
+	 */
+	public void export(String sparql, String graph, RDFHandler handler) throws QueryEvaluationException, RepositoryException, MalformedQueryException, RDFHandlerException {
+		closeQuery();
+		admit();
+		try {
+			URI graphURI = graph == null ? null : repository.getValueFactory().createURI(graph);
+			if (sparql == null || sparql.trim().length() == 0) {
+				Resource[] contexts;
+				if (graphURI != null) {
+					contexts = new Resource[] { graphURI };
+				} else if (dataset != null) {
+					contexts = dataset.getNamedGraphs().toArray(new Resource[0]);
+				} else {
+					contexts = new Resource[0];
+				}
+				connection.exportStatements(null, null, null, includeInferred, handler, contexts);
+				return;
+			}
+			GraphQuery graphQuery = connection.prepareGraphQuery(QueryLanguage.SPARQL, sparql);
+			graphQuery.setIncludeInferred(includeInferred);
+			if (maxQueryTime > 0) {
+				graphQuery.setMaxQueryTime(maxQueryTime);
+			}
+			if (graphURI != null) {
+				DatasetImpl graphDataset = new DatasetImpl();
+				graphDataset.addDefaultGraph(graphURI);
+				graphDataset.addNamedGraph(graphURI);
+				graphQuery.setDataset(graphDataset);
+			} else if (dataset != null) {
+				graphQuery.setDataset(dataset);
+			}
+			graphQuery.evaluate(handler);
+		} finally {
+			leave();
+		}
+	}
+
+	/**
+	 * Receives the rest of the current result into a local spool file and closes it, which frees the
+	 * server and the turn to query. The spool then takes the place of the result.
+	 *
+	 * @param directory the directory for the spool file, or null for the default temporary directory
+	 */
+	public ResultSpool spoolResult(File directory) throws QueryEvaluationException, IOException {
+		ResultSpool spool = new ResultSpool(directory);
+		boolean spooled = false;
+		try {
+			spool.drain(tupleQueryResult);
+			closeQuery();
+			spooled = true;
+		} finally {
+			if (!spooled) {
+				spool.close();
+			}
+		}
+		this.tupleQueryResult = spool;
+		return spool;
+	}
+
+	/**
+	 * Waits for a turn to query the repository, when the number of concurrent queries is capped.
+	 * The turn lasts until the result is closed.
+	 */
+	private void admit() throws QueryEvaluationException {
+		if (governor == null || admitted) {
+			return;
+		}
+		try {
+			governorWait += governor.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new QueryEvaluationException("Interrupted while waiting for a turn to query " + governor.getRepositoryURL(), e);
+		}
+		admitted = true;
+		governedQueries++;
+	}
+
+	private void leave() {
+		if (admitted) {
+			admitted = false;
+			governor.release();
+		}
+	}
+
+	/**
+	 * @return the named graphs of the repository with the number of statements in each
+	 */
+	public Map<String, Long> getGraphSizes() throws QueryEvaluationException, RepositoryException, MalformedQueryException {
+		Map<String, Long> graphSizes = new LinkedHashMap<String, Long>();
+		runQuery("SELECT ?graph (COUNT(*) AS ?size) WHERE { GRAPH ?graph { ?s ?p ?o } } GROUP BY ?graph");
+		while (tupleQueryResult.hasNext()) {
+			BindingSet bindingSet = tupleQueryResult.next();
+			Value graph = bindingSet.getValue("graph");
+			Value size = bindingSet.getValue("size");
+			if (graph instanceof URI) {
+				graphSizes.put(graph.stringValue(), size instanceof Literal ? ((Literal) size).longValue() : 0L);
+			}
+		}
+		closeQuery();
+		return graphSizes;
+	}
+
+	/**
+	 * @return the named graphs of the repository the execution profile allows, all with the same size, which
+	 * is cheaper than counting them
+	 */
+	public Map<String, Long> getGraphs() throws RepositoryException {
+		Map<String, Long> graphs = new LinkedHashMap<String, Long>();
+		Set<URI> allowed = dataset == null || dataset.getNamedGraphs().isEmpty() ? null : dataset.getNamedGraphs();
+		RepositoryResult<Resource> contexts = connection.getContextIDs();
+		try {
+			while (contexts.hasNext()) {
+				Resource context = contexts.next();
+				if (context instanceof URI && (allowed == null || allowed.contains(context))) {
+					graphs.put(context.stringValue(), 1L);
+				}
+			}
+		} finally {
+			contexts.close();
+		}
+		return graphs;
 	}
 	
 	public TupleQueryResult getTupleQueryResult() {
 		return tupleQueryResult;
 	}
 
+	/**
+	 * Closes the result of the last query, if it is still open.
+	 */
+	public void closeQuery() throws QueryEvaluationException {
+		try {
+			if (tupleQueryResult != null) {
+				TupleQueryResult result = tupleQueryResult;
+				tupleQueryResult = null;
+				result.close();
+			}
+		} finally {
+			leave();
+		}
+	}
+
+	/**
+	 * @return the pivot collecting the row of the current subject, or null when solutions become rows as they are
+	 */
+	public EntityPivot getPivot() {
+		return pivot;
+	}
+
+	public void setPivot(EntityPivot pivot) {
+		this.pivot = pivot;
+	}
+
+	/**
+	 * @return the compactor shortening the IRIs in output rows, or null to pass IRIs on whole
+	 */
+	public IriCompactor getIriCompactor() {
+		return iriCompactor;
+	}
+
+	public void setIriCompactor(IriCompactor iriCompactor) {
+		this.iriCompactor = iriCompactor;
+	}
+
+	/**
+	 * @return the comparison with the snapshot of the previous run, or null when every row is passed on
+	 */
+	public SnapshotDiff getSnapshotDiff() {
+		return snapshotDiff;
+	}
+
+	public void setSnapshotDiff(SnapshotDiff snapshotDiff) {
+		this.snapshotDiff = snapshotDiff;
+	}
+
+	/**
+	 * @return the state shared with the other copies of the step in this run
+	 */
+	public CopyCoordinator getCoordinator() {
+		return coordinator;
+	}
+
+	public void setCoordinator(CopyCoordinator coordinator) {
+		this.coordinator = coordinator;
+	}
+
+	/**
+	 * @return the handler keeping large values out of the rows, or null when every value stays in the row
+	 */
+	public LargeValueHandler getLargeValueHandler() {
+		return largeValueHandler;
+	}
+
+	public void setLargeValueHandler(LargeValueHandler largeValueHandler) {
+		this.largeValueHandler = largeValueHandler;
+	}
+
+	/**
+	 * @return the file statements are dumped to, or null when the step passes rows on
+	 */
+	public RdfDump getDump() {
+		return dump;
+	}
+
+	public void setDump(RdfDump dump) {
+		this.dump = dump;
+	}
+
+	public String getDumpFile() {
+		return dumpFile;
+	}
+
+	public void setDumpFile(String dumpFile) {
+		this.dumpFile = dumpFile;
+	}
+
+	/**
+	 * Caps the queries of this step copy, together with those of all other steps querying the same repository.
+	 */
+	public void setGovernor(EndpointGovernor governor) {
+		this.governor = governor;
+	}
+
+	public EndpointGovernor getGovernor() {
+		return governor;
+	}
+
+	/**
+	 * @return the total time spent waiting for a turn to query, in nanoseconds
+	 */
+	public long getGovernorWait() {
+		return governorWait;
+	}
+
+	public long getGovernedQueries() {
+		return governedQueries;
+	}
+
+	public RowMetaInterface getOutputRowMeta() {
+		return outputRowMeta;
+	}
+
+	public void setOutputRowMeta(RowMetaInterface outputRowMeta) {
+		this.outputRowMeta = outputRowMeta;
+	}
+
+	/**
+	 * Remembers the value if it is higher than the highest watermark value seen so far.
+	 * Values are ordered the way SPARQL ORDER BY orders them.
+	 */
+	public void trackWatermark(Value value) {
+		if (value == null) {
+			return;
+		}
+		if (valueComparator == null) {
+			valueComparator = new ValueComparator();
+		}
+		if (watermark == null || valueComparator.compare(value, watermark) > 0) {
+			watermark = value;
+		}
+	}
+
+	/**
+	 * @return the highest watermark value seen in this run, or null if no rows carried one
+	 */
+	public Value getWatermark() {
+		return watermark;
+	}
+
+	/**
+	 * Starts removing duplicate rows on this side of the connection, instead of on the server.
+	 *
+	 * @param memoryBudget the number of bytes the row fingerprints may occupy before they spill to disk
+	 */
+	public void startDistinct(long memoryBudget) throws IOException {
+		distinctRows = new RowFingerprintSet(memoryBudget);
+		rowHasher = new RowHasher();
+		duplicateRows = 0;
+	}
+
+	public boolean isDistinct() {
+		return distinctRows != null;
+	}
+
+	/**
+	 * @return true if a solution with the same values for the given bindings was seen before
+	 */
+	public boolean isDuplicate(BindingSet bindingSet, List<String> bindingNames) throws IOException {
+		rowHasher.reset();
+		for (String bindingName : bindingNames) {
+			rowHasher.add(bindingSet.getValue(bindingName));
+		}
+		if (distinctRows.add(rowHasher.getHigh(), rowHasher.getLow())) {
+			return false;
+		}
+		duplicateRows++;
+		return true;
+	}
+
+	public long getDuplicateRows() {
+		return duplicateRows;
+	}
+
+	public RowFingerprintSet getDistinctRows() {
+		return distinctRows;
+	}
+
+	/**
+	 * Prepares for looking up values by key, rather than generating rows.
+	 *
+	 * @param keyIndex the index of the key field in the input rows
+	 * @param keyBinding the name of the binding that holds the key in the query
+	 * @param sparql the query binding the key and the values to look up
+	 * @param cacheSize the maximum number of keys to preload or cache
+	 * @param batchSize the number of rows to look up with a single query
+	 */
+	public void startLookup(int keyIndex, String keyBinding, String sparql, int cacheSize, int batchSize) {
+		this.lookupKeyIndex = keyIndex;
+		this.lookupKeyBinding = keyBinding;
+		this.lookupSparql = sparql;
+		this.lookupBatchSize = batchSize;
+		this.lookupCache = new LookupCache(cacheSize);
+		this.pendingRows = new ArrayList<Object[]>(batchSize);
+		this.lookupQueries = 0;
+	}
+
+	public LookupCache getLookupCache() {
+		return lookupCache;
+	}
+
+	/**
+	 * @return the input rows waiting for the next lookup query
+	 */
+	public List<Object[]> getPendingRows() {
+		return pendingRows;
+	}
+
+	public int getLookupKeyIndex() {
+		return lookupKeyIndex;
+	}
+
+	public String getLookupKeyBinding() {
+		return lookupKeyBinding;
+	}
+
+	public String getLookupSparql() {
+		return lookupSparql;
+	}
+
+	public int getLookupBatchSize() {
+		return lookupBatchSize;
+	}
+
+	/**
+	 * Takes the bindings of the query, except the key, as the values to look up.
+	 */
+	public void setLookupBindings(List<String> bindingNames) {
+		lookupBindings = new ArrayList<String>(bindingNames);
+		lookupBindings.remove(lookupKeyBinding);
+	}
+
+	public List<String> getLookupBindings() {
+		return lookupBindings;
+	}
+
+	/**
+	 * @return the looked up values of a solution, in the order of the lookup bindings
+	 */
+	public String[] getLookupValues(BindingSet bindingSet) {
+		String[] values = new String[lookupBindings.size()];
+		for (int i = 0; i < values.length; i++) {
+			Value value = bindingSet.getValue(lookupBindings.get(i));
+			values[i] = value == null ? null : value.stringValue();
+		}
+		return values;
+	}
+
+	public long getLookupQueries() {
+		return lookupQueries;
+	}
+
+	public void incrementLookupQueries() {
+		lookupQueries++;
+	}
+
+	/**
+	 * @return the index of the input field holding the named graphs to extract
+	 */
+	public int getGraphFieldIndex() {
+		return graphFieldIndex;
+	}
+
+	public void setGraphFieldIndex(int graphFieldIndex) {
+		this.graphFieldIndex = graphFieldIndex;
+	}
+
+	/**
+	 * @return the query, after rewriting, that runs for every named graph read from the input
+	 */
+	public String getPreparedQuery() {
+		return preparedQuery;
+	}
+
+	public void setPreparedQuery(String preparedQuery) {
+		this.preparedQuery = preparedQuery;
+	}
+
 }
@@ -17,6 +17,9 @@
 package com.google.code.kettle.openrdf.di;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.CCombo;
+import org.eclipse.swt.custom.CTabFolder;
+import org.eclipse.swt.custom.CTabItem;
 import org.eclipse.swt.events.ModifyEvent;
 import org.eclipse.swt.events.ModifyListener;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -27,15 +30,19 @@ import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.MessageBox;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Text;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.resultio.TupleQueryResultFormat;
 import org.openrdf.repository.RepositoryException;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.Props;
@@ -49,7 +56,9 @@ import org.pentaho.di.ui.core.dialog.EnterNumberDialog;
 import org.pentaho.di.ui.core.dialog.EnterTextDialog;
 import org.pentaho.di.ui.core.dialog.ErrorDialog;
 import org.pentaho.di.ui.core.dialog.PreviewRowsDialog;
+import org.pentaho.di.ui.core.widget.ColumnInfo;
 import org.pentaho.di.ui.core.widget.StyledTextComp;
+import org.pentaho.di.ui.core.widget.TableView;
 import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.dialog.TransPreviewProgressDialog;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
@@ -79,6 +88,66 @@ public class OpenRDFStepDialog extends BaseStepDialog implements StepDialogInter
 	private StyledTextComp wSparql;
 	private Button wTest;
 	private Listener lsTest;
+	private CTabFolder wTabFolder;
+	private CCombo wResultFormat;
+
+	private Button wIncremental;
+	private TextVar wWatermarkBinding;
+	private TextVar wWatermarkFile;
+	private TextVar wWatermarkVariable;
+
+	private Button wClientDistinct;
+	private TextVar wDistinctMemorySize;
+
+	private Button wLookup;
+	private TextVar wLookupKeyField;
+	private TextVar wLookupKeyBinding;
+	private Button wLookupKeyIRI;
+	private Button wLookupPreload;
+	private TextVar wLookupCacheSize;
+	private TextVar wLookupBatchSize;
+
+	private Button wIncludeInferred;
+	private TextVar wDefaultGraphs;
+	private TextVar wNamedGraphs;
+	private TextVar wMaxQueryTime;
+	private TextVar wMaxConcurrentQueries;
+	private Button wSpoolResults;
+	private TextVar wSpoolDirectory;
+
+	private Button wPivot;
+	private TextVar wPivotSubjectBinding;
+	private TextVar wPivotPredicateBinding;
+	private TextVar wPivotObjectBinding;
+	private TextVar wPivotSeparator;
+	private TableView wPivotFields;
+
+	private CCombo wIriCompaction;
+	private TableView wNamespaces;
+
+	private TextVar wLargeValueThreshold;
+	private TextVar wLargeValueFields;
+	private Button wLargeValueBinary;
+	private TextVar wLargeValueDirectory;
+	private TextVar wLargeValueBudget;
+
+	private Button wDump;
+	private TextVar wDumpFile;
+	private CCombo wDumpFormat;
+	private Button wDumpCompressed;
+
+	private Button wSnapshotDiff;
+	private TextVar wSnapshotFile;
+	private TextVar wSnapshotKeys;
+	private TextVar wChangeField;
+
+	private Button wGraphPartitioned;
+	private TextVar wGraphField;
+	private Button wGraphBalanceBySize;
+
+	private ModifyListener lsMod;
+	private int middle;
+	private int margin;
 	
 	/**
 	 * The constructor should simply invoke super() and save the incoming meta object to a local variable, so it can conveniently read and write settings from/to it.
@@ -125,7 +194,7 @@ public class OpenRDFStepDialog extends BaseStepDialog implements StepDialogInter
 
 		// The ModifyListener used on all controls. It will update the meta object to
 		// indicate that changes are being made.
-		ModifyListener lsMod = new ModifyListener() {
+		lsMod = new ModifyListener() {
 			public void modifyText(ModifyEvent e) {
 				meta.setChanged();
 			}
@@ -141,8 +210,8 @@ public class OpenRDFStepDialog extends BaseStepDialog implements StepDialogInter
 		shell.setLayout(formLayout);
 		shell.setText(BaseMessages.getString(PKG, "OpenRDF.Shell.Title"));
 
-		int middle = props.getMiddlePct();
-		int margin = Const.MARGIN;
+		middle = props.getMiddlePct();
+		margin = Const.MARGIN;
 
 		// Stepname line
 		wlStepname = new Label(shell, SWT.RIGHT);
@@ -212,19 +281,128 @@ public class OpenRDFStepDialog extends BaseStepDialog implements StepDialogInter
 		fdTest.top = new FormAttachment(wRepositoryUrl, margin);
 		wTest.setLayoutData(fdTest);
 				
-		wSparql =  new StyledTextComp(transMeta, shell, SWT.MULTI | SWT.LEFT | SWT.BORDER | SWT.H_SCROLL | SWT.V_SCROLL, "");
+		// The query and its execution options each get a tab
+		wTabFolder = new CTabFolder(shell, SWT.BORDER);
+		props.setLook(wTabFolder, Props.WIDGET_STYLE_TAB);
+		wTabFolder.setSimple(false);
+		FormData fdTabFolder = new FormData();
+		fdTabFolder.left = new FormAttachment(0, 0);
+		fdTabFolder.top = new FormAttachment(wTest, margin);
+		fdTabFolder.right = new FormAttachment(100, 0);
+		fdTabFolder.bottom = new FormAttachment(wOK, -margin);
+		wTabFolder.setLayoutData(fdTabFolder);
+
+		Composite wQueryComp = addTab("OpenRDF.Tab.Query.Label");
+		wSparql =  new StyledTextComp(transMeta, wQueryComp, SWT.MULTI | SWT.LEFT | SWT.BORDER | SWT.H_SCROLL | SWT.V_SCROLL, "");
 	    props.setLook(wSparql, Props.WIDGET_STYLE_FIXED);
 		wSparql.addModifyListener(lsMod);
 		FormData fdSparql = new FormData();
 		fdSparql.left = new FormAttachment(0, 0);
-		fdSparql.top = new FormAttachment(wTest, margin);
-		fdSparql.right = new FormAttachment(100, -2 * margin);
-		fdSparql.bottom= new FormAttachment(wOK, -margin);
+		fdSparql.top = new FormAttachment(0, 0);
+		fdSparql.right = new FormAttachment(100, 0);
+		fdSparql.bottom= new FormAttachment(100, 0);
 		wSparql.setLayoutData(fdSparql);
 		wSparql.addLineStyleListener(new SQLValuesHighlight());
-		
-		
-		
+
+		// Execution options
+		Composite wOptionsComp = addTab("OpenRDF.Tab.Options.Label");
+		String[] resultFormats = new String[] { "", TupleQueryResultFormat.BINARY.getName(), TupleQueryResultFormat.SPARQL.getName() };
+		wResultFormat = addCombo(wOptionsComp, "OpenRDF.wlResultFormat.Label", null, resultFormats);
+		wIncludeInferred = addCheckBox(wOptionsComp, "OpenRDF.wlIncludeInferred.Label", wResultFormat);
+		wDefaultGraphs = addTextVar(wOptionsComp, "OpenRDF.wlDefaultGraphs.Label", wIncludeInferred);
+		wNamedGraphs = addTextVar(wOptionsComp, "OpenRDF.wlNamedGraphs.Label", wDefaultGraphs);
+		wMaxQueryTime = addTextVar(wOptionsComp, "OpenRDF.wlMaxQueryTime.Label", wNamedGraphs);
+		wMaxConcurrentQueries = addTextVar(wOptionsComp, "OpenRDF.wlMaxConcurrentQueries.Label", wMaxQueryTime);
+		wSpoolResults = addCheckBox(wOptionsComp, "OpenRDF.wlSpoolResults.Label", wMaxConcurrentQueries);
+		wSpoolDirectory = addTextVar(wOptionsComp, "OpenRDF.wlSpoolDirectory.Label", wSpoolResults);
+
+		// Incremental extraction
+		Composite wIncrementalComp = addTab("OpenRDF.Tab.Incremental.Label");
+		wIncremental = addCheckBox(wIncrementalComp, "OpenRDF.wlIncremental.Label", null);
+		wWatermarkBinding = addTextVar(wIncrementalComp, "OpenRDF.wlWatermarkBinding.Label", wIncremental);
+		wWatermarkFile = addTextVar(wIncrementalComp, "OpenRDF.wlWatermarkFile.Label", wWatermarkBinding);
+		wWatermarkVariable = addTextVar(wIncrementalComp, "OpenRDF.wlWatermarkVariable.Label", wWatermarkFile);
+
+		// Client side DISTINCT
+		Composite wDistinctComp = addTab("OpenRDF.Tab.Distinct.Label");
+		wClientDistinct = addCheckBox(wDistinctComp, "OpenRDF.wlClientDistinct.Label", null);
+		wDistinctMemorySize = addTextVar(wDistinctComp, "OpenRDF.wlDistinctMemorySize.Label", wClientDistinct);
+
+		// Lookup
+		Composite wLookupComp = addTab("OpenRDF.Tab.Lookup.Label");
+		wLookup = addCheckBox(wLookupComp, "OpenRDF.wlLookup.Label", null);
+		wLookupKeyField = addTextVar(wLookupComp, "OpenRDF.wlLookupKeyField.Label", wLookup);
+		wLookupKeyBinding = addTextVar(wLookupComp, "OpenRDF.wlLookupKeyBinding.Label", wLookupKeyField);
+		wLookupKeyIRI = addCheckBox(wLookupComp, "OpenRDF.wlLookupKeyIRI.Label", wLookupKeyBinding);
+		wLookupPreload = addCheckBox(wLookupComp, "OpenRDF.wlLookupPreload.Label", wLookupKeyIRI);
+		wLookupCacheSize = addTextVar(wLookupComp, "OpenRDF.wlLookupCacheSize.Label", wLookupPreload);
+		wLookupBatchSize = addTextVar(wLookupComp, "OpenRDF.wlLookupBatchSize.Label", wLookupCacheSize);
+
+		// Named graph partitioning
+		Composite wGraphComp = addTab("OpenRDF.Tab.Graphs.Label");
+		wGraphPartitioned = addCheckBox(wGraphComp, "OpenRDF.wlGraphPartitioned.Label", null);
+		wGraphField = addTextVar(wGraphComp, "OpenRDF.wlGraphField.Label", wGraphPartitioned);
+		wGraphBalanceBySize = addCheckBox(wGraphComp, "OpenRDF.wlGraphBalanceBySize.Label", wGraphField);
+
+		// Subject pivot
+		Composite wPivotComp = addTab("OpenRDF.Tab.Pivot.Label");
+		wPivot = addCheckBox(wPivotComp, "OpenRDF.wlPivot.Label", null);
+		wPivotSubjectBinding = addTextVar(wPivotComp, "OpenRDF.wlPivotSubjectBinding.Label", wPivot);
+		wPivotPredicateBinding = addTextVar(wPivotComp, "OpenRDF.wlPivotPredicateBinding.Label", wPivotSubjectBinding);
+		wPivotObjectBinding = addTextVar(wPivotComp, "OpenRDF.wlPivotObjectBinding.Label", wPivotPredicateBinding);
+		wPivotSeparator = addTextVar(wPivotComp, "OpenRDF.wlPivotSeparator.Label", wPivotObjectBinding);
+		Label wlPivotFields = addLabel(wPivotComp, "OpenRDF.wlPivotFields.Label", wPivotSeparator);
+		ColumnInfo[] pivotColumns = new ColumnInfo[] {
+				new ColumnInfo(BaseMessages.getString(PKG, "OpenRDF.ColumnInfo.Predicate"), ColumnInfo.COLUMN_TYPE_TEXT, false),
+				new ColumnInfo(BaseMessages.getString(PKG, "OpenRDF.ColumnInfo.Field"), ColumnInfo.COLUMN_TYPE_TEXT, false),
+				new ColumnInfo(BaseMessages.getString(PKG, "OpenRDF.ColumnInfo.Aggregation"), ColumnInfo.COLUMN_TYPE_CCOMBO, EntityPivot.AGGREGATIONS), };
+		wPivotFields = new TableView(transMeta, wPivotComp, SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI, pivotColumns, meta.getPivotPredicates().length, lsMod, props);
+		FormData fdPivotFields = new FormData();
+		fdPivotFields.left = new FormAttachment(0, 0);
+		fdPivotFields.top = new FormAttachment(wlPivotFields, margin);
+		fdPivotFields.right = new FormAttachment(100, 0);
+		fdPivotFields.bottom = new FormAttachment(100, 0);
+		wPivotFields.setLayoutData(fdPivotFields);
+
+		// Large values
+		Composite wLargeValueComp = addTab("OpenRDF.Tab.LargeValues.Label");
+		wLargeValueThreshold = addTextVar(wLargeValueComp, "OpenRDF.wlLargeValueThreshold.Label", null);
+		wLargeValueFields = addTextVar(wLargeValueComp, "OpenRDF.wlLargeValueFields.Label", wLargeValueThreshold);
+		wLargeValueDirectory = addTextVar(wLargeValueComp, "OpenRDF.wlLargeValueDirectory.Label", wLargeValueFields);
+		wLargeValueBinary = addCheckBox(wLargeValueComp, "OpenRDF.wlLargeValueBinary.Label", wLargeValueDirectory);
+		wLargeValueBudget = addTextVar(wLargeValueComp, "OpenRDF.wlLargeValueBudget.Label", wLargeValueBinary);
+
+		// Dump
+		Composite wDumpComp = addTab("OpenRDF.Tab.Dump.Label");
+		wDump = addCheckBox(wDumpComp, "OpenRDF.wlDump.Label", null);
+		wDumpFile = addTextVar(wDumpComp, "OpenRDF.wlDumpFile.Label", wDump);
+		wDumpFormat = addCombo(wDumpComp, "OpenRDF.wlDumpFormat.Label", wDumpFile, RdfDump.getFormatNames());
+		wDumpCompressed = addCheckBox(wDumpComp, "OpenRDF.wlDumpCompressed.Label", wDumpFormat);
+
+		// Snapshot diff
+		Composite wSnapshotComp = addTab("OpenRDF.Tab.Snapshot.Label");
+		wSnapshotDiff = addCheckBox(wSnapshotComp, "OpenRDF.wlSnapshotDiff.Label", null);
+		wSnapshotFile = addTextVar(wSnapshotComp, "OpenRDF.wlSnapshotFile.Label", wSnapshotDiff);
+		wSnapshotKeys = addTextVar(wSnapshotComp, "OpenRDF.wlSnapshotKeys.Label", wSnapshotFile);
+		wChangeField = addTextVar(wSnapshotComp, "OpenRDF.wlChangeField.Label", wSnapshotKeys);
+
+		// IRI compaction
+		Composite wIriComp = addTab("OpenRDF.Tab.IRIs.Label");
+		wIriCompaction = addCombo(wIriComp, "OpenRDF.wlIriCompaction.Label", null, IriCompactor.MODES);
+		Label wlNamespaces = addLabel(wIriComp, "OpenRDF.wlNamespaces.Label", wIriCompaction);
+		ColumnInfo[] namespaceColumns = new ColumnInfo[] {
+				new ColumnInfo(BaseMessages.getString(PKG, "OpenRDF.ColumnInfo.Prefix"), ColumnInfo.COLUMN_TYPE_TEXT, false),
+				new ColumnInfo(BaseMessages.getString(PKG, "OpenRDF.ColumnInfo.Namespace"), ColumnInfo.COLUMN_TYPE_TEXT, false), };
+		wNamespaces = new TableView(transMeta, wIriComp, SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI, namespaceColumns, meta.getNamespacePrefixes().length, lsMod, props);
+		FormData fdNamespaces = new FormData();
+		fdNamespaces.left = new FormAttachment(0, 0);
+		fdNamespaces.top = new FormAttachment(wlNamespaces, margin);
+		fdNamespaces.right = new FormAttachment(100, 0);
+		fdNamespaces.bottom = new FormAttachment(100, 0);
+		wNamespaces.setLayoutData(fdNamespaces);
+
+		wTabFolder.setSelection(0);
+
 		// Add listeners for cancel and OK
 		lsCancel = new Listener() {
 			public void handleEvent(Event e) {
@@ -294,6 +472,90 @@ public class OpenRDFStepDialog extends BaseStepDialog implements StepDialogInter
 		return stepname;
 	}
 
+	/**
+	 * Adds a tab to the tab folder and returns the composite holding its controls.
+	 */
+	private Composite addTab(String labelKey) {
+		CTabItem wTab = new CTabItem(wTabFolder, SWT.NONE);
+		wTab.setText(BaseMessages.getString(PKG, labelKey));
+		Composite wComp = new Composite(wTabFolder, SWT.NONE);
+		props.setLook(wComp);
+		FormLayout compLayout = new FormLayout();
+		compLayout.marginWidth = Const.FORM_MARGIN;
+		compLayout.marginHeight = Const.FORM_MARGIN;
+		wComp.setLayout(compLayout);
+		wTab.setControl(wComp);
+		return wComp;
+	}
+
+	/**
+	 * Adds a right aligned label in the left column of a tab, below the given control.
+	 */
+	private Label addLabel(Composite parent, String labelKey, Control top) {
+		Label wLabel = new Label(parent, SWT.RIGHT);
+		wLabel.setText(BaseMessages.getString(PKG, labelKey));
+		props.setLook(wLabel);
+		FormData fdLabel = new FormData();
+		fdLabel.left = new FormAttachment(0, 0);
+		fdLabel.right = new FormAttachment(middle, -margin);
+		fdLabel.top = top == null ? new FormAttachment(0, margin) : new FormAttachment(top, margin);
+		wLabel.setLayoutData(fdLabel);
+		return wLabel;
+	}
+
+	/**
+	 * Adds a labelled text field that accepts variables, below the given control.
+	 */
+	private TextVar addTextVar(Composite parent, String labelKey, Control top) {
+		addLabel(parent, labelKey, top);
+		TextVar wText = new TextVar(transMeta, parent, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		props.setLook(wText);
+		wText.addModifyListener(lsMod);
+		FormData fdText = new FormData();
+		fdText.left = new FormAttachment(middle, 0);
+		fdText.right = new FormAttachment(100, 0);
+		fdText.top = top == null ? new FormAttachment(0, margin) : new FormAttachment(top, margin);
+		wText.setLayoutData(fdText);
+		return wText;
+	}
+
+	/**
+	 * Adds a labelled, editable drop down list, below the given control.
+	 */
+	private CCombo addCombo(Composite parent, String labelKey, Control top, String[] items) {
+		addLabel(parent, labelKey, top);
+		CCombo wCombo = new CCombo(parent, SWT.BORDER);
+		wCombo.setItems(items);
+		props.setLook(wCombo);
+		wCombo.addModifyListener(lsMod);
+		FormData fdCombo = new FormData();
+		fdCombo.left = new FormAttachment(middle, 0);
+		fdCombo.right = new FormAttachment(100, 0);
+		fdCombo.top = top == null ? new FormAttachment(0, margin) : new FormAttachment(top, margin);
+		wCombo.setLayoutData(fdCombo);
+		return wCombo;
+	}
+
+	/**
+	 * Adds a labelled check box, below the given control.
+	 */
+	private Button addCheckBox(Composite parent, String labelKey, Control top) {
+		addLabel(parent, labelKey, top);
+		Button wCheck = new Button(parent, SWT.CHECK);
+		props.setLook(wCheck);
+		wCheck.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				meta.setChanged();
+			}
+		});
+		FormData fdCheck = new FormData();
+		fdCheck.left = new FormAttachment(middle, 0);
+		fdCheck.right = new FormAttachment(100, 0);
+		fdCheck.top = top == null ? new FormAttachment(0, margin) : new FormAttachment(top, margin);
+		wCheck.setLayoutData(fdCheck);
+		return wCheck;
+	}
+
 	/**
 	 * This helper method puts the step configuration stored in the meta object and puts it into the dialog controls.
 	 */
@@ -301,6 +563,64 @@ public class OpenRDFStepDialog extends BaseStepDialog implements StepDialogInter
 		wStepname.selectAll();
 		wRepositoryUrl.setText(meta.getRepositoryURL());
 		wSparql.setText(meta.getSparql());
+		wResultFormat.setText(Const.NVL(meta.getResultFormat(), ""));
+		wIncremental.setSelection(meta.isIncremental());
+		wWatermarkBinding.setText(Const.NVL(meta.getWatermarkBinding(), ""));
+		wWatermarkFile.setText(Const.NVL(meta.getWatermarkFile(), ""));
+		wWatermarkVariable.setText(Const.NVL(meta.getWatermarkVariable(), ""));
+		wClientDistinct.setSelection(meta.isClientDistinct());
+		wDistinctMemorySize.setText(Const.NVL(meta.getDistinctMemorySize(), ""));
+		wLookup.setSelection(meta.isLookup());
+		wLookupKeyField.setText(Const.NVL(meta.getLookupKeyField(), ""));
+		wLookupKeyBinding.setText(Const.NVL(meta.getLookupKeyBinding(), ""));
+		wLookupKeyIRI.setSelection(meta.isLookupKeyIRI());
+		wLookupPreload.setSelection(meta.isLookupPreload());
+		wLookupCacheSize.setText(Const.NVL(meta.getLookupCacheSize(), ""));
+		wLookupBatchSize.setText(Const.NVL(meta.getLookupBatchSize(), ""));
+		wIncludeInferred.setSelection(meta.isIncludeInferred());
+		wDefaultGraphs.setText(Const.NVL(meta.getDefaultGraphs(), ""));
+		wNamedGraphs.setText(Const.NVL(meta.getNamedGraphs(), ""));
+		wMaxQueryTime.setText(Const.NVL(meta.getMaxQueryTime(), ""));
+		wMaxConcurrentQueries.setText(Const.NVL(meta.getMaxConcurrentQueries(), ""));
+		wSpoolResults.setSelection(meta.isSpoolResults());
+		wSpoolDirectory.setText(Const.NVL(meta.getSpoolDirectory(), ""));
+		wPivot.setSelection(meta.isPivot());
+		wPivotSubjectBinding.setText(Const.NVL(meta.getPivotSubjectBinding(), ""));
+		wPivotPredicateBinding.setText(Const.NVL(meta.getPivotPredicateBinding(), ""));
+		wPivotObjectBinding.setText(Const.NVL(meta.getPivotObjectBinding(), ""));
+		wPivotSeparator.setText(Const.NVL(meta.getPivotSeparator(), ""));
+		for (int i = 0; i < meta.getPivotPredicates().length; i++) {
+			TableItem item = wPivotFields.table.getItem(i);
+			item.setText(1, Const.NVL(meta.getPivotPredicates()[i], ""));
+			item.setText(2, Const.NVL(meta.getPivotFieldNames()[i], ""));
+			item.setText(3, Const.NVL(meta.getPivotAggregations()[i], ""));
+		}
+		wPivotFields.setRowNums();
+		wPivotFields.optWidth(true);
+		wIriCompaction.setText(Const.NVL(meta.getIriCompaction(), ""));
+		for (int i = 0; i < meta.getNamespacePrefixes().length; i++) {
+			TableItem item = wNamespaces.table.getItem(i);
+			item.setText(1, Const.NVL(meta.getNamespacePrefixes()[i], ""));
+			item.setText(2, Const.NVL(meta.getNamespaceIRIs()[i], ""));
+		}
+		wNamespaces.setRowNums();
+		wNamespaces.optWidth(true);
+		wLargeValueThreshold.setText(Const.NVL(meta.getLargeValueThreshold(), ""));
+		wLargeValueFields.setText(Const.NVL(meta.getLargeValueFields(), ""));
+		wLargeValueDirectory.setText(Const.NVL(meta.getLargeValueDirectory(), ""));
+		wLargeValueBinary.setSelection(meta.isLargeValueBinary());
+		wLargeValueBudget.setText(Const.NVL(meta.getLargeValueBudget(), ""));
+		wDump.setSelection(meta.isDump());
+		wDumpFile.setText(Const.NVL(meta.getDumpFile(), ""));
+		wDumpFormat.setText(Const.NVL(meta.getDumpFormat(), ""));
+		wDumpCompressed.setSelection(meta.isDumpCompressed());
+		wSnapshotDiff.setSelection(meta.isSnapshotDiff());
+		wSnapshotFile.setText(Const.NVL(meta.getSnapshotFile(), ""));
+		wSnapshotKeys.setText(Const.NVL(meta.getSnapshotKeys(), ""));
+		wChangeField.setText(Const.NVL(meta.getChangeField(), ""));
+		wGraphPartitioned.setSelection(meta.isGraphPartitioned());
+		wGraphField.setText(Const.NVL(meta.getGraphField(), ""));
+		wGraphBalanceBySize.setSelection(meta.isGraphBalanceBySize());
 	}
 	
 	/**
@@ -326,6 +646,64 @@ public class OpenRDFStepDialog extends BaseStepDialog implements StepDialogInter
 		// Setting the settings to the meta object
 		meta.setRepositoryURL(wRepositoryUrl.getText());
 		meta.setSparql(wSparql.getText());
+		meta.setResultFormat(wResultFormat.getText());
+		meta.setIncremental(wIncremental.getSelection());
+		meta.setWatermarkBinding(wWatermarkBinding.getText());
+		meta.setWatermarkFile(wWatermarkFile.getText());
+		meta.setWatermarkVariable(wWatermarkVariable.getText());
+		meta.setClientDistinct(wClientDistinct.getSelection());
+		meta.setDistinctMemorySize(wDistinctMemorySize.getText());
+		meta.setLookup(wLookup.getSelection());
+		meta.setLookupKeyField(wLookupKeyField.getText());
+		meta.setLookupKeyBinding(wLookupKeyBinding.getText());
+		meta.setLookupKeyIRI(wLookupKeyIRI.getSelection());
+		meta.setLookupPreload(wLookupPreload.getSelection());
+		meta.setLookupCacheSize(wLookupCacheSize.getText());
+		meta.setLookupBatchSize(wLookupBatchSize.getText());
+		meta.setIncludeInferred(wIncludeInferred.getSelection());
+		meta.setDefaultGraphs(wDefaultGraphs.getText());
+		meta.setNamedGraphs(wNamedGraphs.getText());
+		meta.setMaxQueryTime(wMaxQueryTime.getText());
+		meta.setMaxConcurrentQueries(wMaxConcurrentQueries.getText());
+		meta.setSpoolResults(wSpoolResults.getSelection());
+		meta.setSpoolDirectory(wSpoolDirectory.getText());
+		meta.setPivot(wPivot.getSelection());
+		meta.setPivotSubjectBinding(wPivotSubjectBinding.getText());
+		meta.setPivotPredicateBinding(wPivotPredicateBinding.getText());
+		meta.setPivotObjectBinding(wPivotObjectBinding.getText());
+		meta.setPivotSeparator(wPivotSeparator.getText());
+		int nrPivotFields = wPivotFields.nrNonEmpty();
+		meta.allocatePivotFields(nrPivotFields);
+		for (int i = 0; i < nrPivotFields; i++) {
+			TableItem item = wPivotFields.getNonEmpty(i);
+			meta.getPivotPredicates()[i] = item.getText(1);
+			meta.getPivotFieldNames()[i] = item.getText(2);
+			meta.getPivotAggregations()[i] = Const.isEmpty(item.getText(3)) ? EntityPivot.FIRST : item.getText(3);
+		}
+		meta.setIriCompaction(wIriCompaction.getText());
+		int nrNamespaces = wNamespaces.nrNonEmpty();
+		meta.allocateNamespaces(nrNamespaces);
+		for (int i = 0; i < nrNamespaces; i++) {
+			TableItem item = wNamespaces.getNonEmpty(i);
+			meta.getNamespacePrefixes()[i] = item.getText(1);
+			meta.getNamespaceIRIs()[i] = item.getText(2);
+		}
+		meta.setLargeValueThreshold(wLargeValueThreshold.getText());
+		meta.setLargeValueFields(wLargeValueFields.getText());
+		meta.setLargeValueDirectory(wLargeValueDirectory.getText());
+		meta.setLargeValueBinary(wLargeValueBinary.getSelection());
+		meta.setLargeValueBudget(wLargeValueBudget.getText());
+		meta.setDump(wDump.getSelection());
+		meta.setDumpFile(wDumpFile.getText());
+		meta.setDumpFormat(wDumpFormat.getText());
+		meta.setDumpCompressed(wDumpCompressed.getSelection());
+		meta.setSnapshotDiff(wSnapshotDiff.getSelection());
+		meta.setSnapshotFile(wSnapshotFile.getText());
+		meta.setSnapshotKeys(wSnapshotKeys.getText());
+		meta.setChangeField(wChangeField.getText());
+		meta.setGraphPartitioned(wGraphPartitioned.getSelection());
+		meta.setGraphField(wGraphField.getText());
+		meta.setGraphBalanceBySize(wGraphBalanceBySize.getSelection());
 		// close the SWT dialog window
 		dispose();
 	}
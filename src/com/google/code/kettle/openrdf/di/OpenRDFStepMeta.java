@@ -16,6 +16,8 @@
  */
 package com.google.code.kettle.openrdf.di;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +27,7 @@ import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.repository.RepositoryException;
 import org.pentaho.di.core.CheckResult;
 import org.pentaho.di.core.CheckResultInterface;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.Counter;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
@@ -67,6 +70,78 @@ public class OpenRDFStepMeta extends BaseStepMeta implements StepMetaInterface {
 
 	private String repositoryURL;
 	private String sparql;
+	private String resultFormat;
+
+	// incremental extraction settings
+	private boolean incremental;
+	private String watermarkBinding;
+	private String watermarkFile;
+	private String watermarkVariable;
+
+	// client side DISTINCT settings
+	private boolean clientDistinct;
+	private String distinctMemorySize;
+
+	// lookup settings
+	private boolean lookup;
+	private String lookupKeyField;
+	private String lookupKeyBinding;
+	private boolean lookupKeyIRI;
+	private boolean lookupPreload;
+	private String lookupCacheSize;
+	private String lookupBatchSize;
+
+	// query execution profile
+	private boolean includeInferred;
+	private String defaultGraphs;
+	private String namedGraphs;
+	private String maxQueryTime;
+
+	// concurrency cap shared by all steps querying the repository
+	private String maxConcurrentQueries;
+
+	// result spooling settings
+	private boolean spoolResults;
+	private String spoolDirectory;
+
+	// subject pivot settings
+	private boolean pivot;
+	private String pivotSubjectBinding;
+	private String pivotPredicateBinding;
+	private String pivotObjectBinding;
+	private String pivotSeparator;
+	private String[] pivotPredicates;
+	private String[] pivotFieldNames;
+	private String[] pivotAggregations;
+
+	// IRI compaction settings
+	private String iriCompaction;
+	private String[] namespacePrefixes;
+	private String[] namespaceIRIs;
+
+	// large value settings
+	private String largeValueThreshold;
+	private String largeValueFields;
+	private boolean largeValueBinary;
+	private String largeValueDirectory;
+	private String largeValueBudget;
+
+	// dump settings
+	private boolean dump;
+	private String dumpFile;
+	private String dumpFormat;
+	private boolean dumpCompressed;
+
+	// snapshot diff settings
+	private boolean snapshotDiff;
+	private String snapshotFile;
+	private String snapshotKeys;
+	private String changeField;
+
+	// named graph partitioning settings
+	private boolean graphPartitioned;
+	private String graphField;
+	private boolean graphBalanceBySize;
 
 	/**
 	 * Constructor should call super() to make sure the base class has a chance to initialize properly.
@@ -124,6 +199,68 @@ public class OpenRDFStepMeta extends BaseStepMeta implements StepMetaInterface {
 	public void setDefault() {
 		repositoryURL = "http://localhost:8080/openrdf-sesame/repositories/SYSTEM";
 		sparql = "PREFIX rdf:<http://www.w3.org/1999/02/22-rdf-syntax-ns#>\nPREFIX sys:<http://www.openrdf.org/config/repository#>\nSELECT ?repositoryID\nWHERE {\n      ?repository sys:repositoryID ?repositoryID .\n}\nORDER BY ASC(?repositoryID)";
+		resultFormat = null;
+		incremental = false;
+		watermarkBinding = "modified";
+		watermarkFile = null;
+		watermarkVariable = null;
+		clientDistinct = false;
+		distinctMemorySize = "64";
+		lookup = false;
+		lookupKeyField = null;
+		lookupKeyBinding = "key";
+		lookupKeyIRI = true;
+		lookupPreload = true;
+		lookupCacheSize = "100000";
+		lookupBatchSize = "100";
+		includeInferred = true;
+		defaultGraphs = null;
+		namedGraphs = null;
+		maxQueryTime = null;
+		maxConcurrentQueries = null;
+		spoolResults = false;
+		spoolDirectory = null;
+		graphPartitioned = false;
+		graphField = null;
+		graphBalanceBySize = true;
+		pivot = false;
+		pivotSubjectBinding = "s";
+		pivotPredicateBinding = "p";
+		pivotObjectBinding = "o";
+		pivotSeparator = ",";
+		allocatePivotFields(0);
+		iriCompaction = null;
+		allocateNamespaces(0);
+		largeValueThreshold = null;
+		largeValueFields = null;
+		largeValueBinary = false;
+		largeValueDirectory = null;
+		largeValueBudget = "64";
+		dump = false;
+		dumpFile = null;
+		dumpFormat = "N-Triples";
+		dumpCompressed = true;
+		snapshotDiff = false;
+		snapshotFile = null;
+		snapshotKeys = null;
+		changeField = "change";
+	}
+
+	/**
+	 * Makes room for the given number of namespaces in the namespace table.
+	 */
+	public void allocateNamespaces(int nrNamespaces) {
+		namespacePrefixes = new String[nrNamespaces];
+		namespaceIRIs = new String[nrNamespaces];
+	}
+
+	/**
+	 * Makes room for the given number of pivot columns.
+	 */
+	public void allocatePivotFields(int nrFields) {
+		pivotPredicates = new String[nrFields];
+		pivotFieldNames = new String[nrFields];
+		pivotAggregations = new String[nrFields];
 	}
 
 	/**
@@ -134,7 +271,16 @@ public class OpenRDFStepMeta extends BaseStepMeta implements StepMetaInterface {
 	 * @return a deep copy of this
 	 */
 	public Object clone() {
-		Object retval = super.clone();
+		OpenRDFStepMeta retval = (OpenRDFStepMeta) super.clone();
+		int nrFields = pivotPredicates.length;
+		retval.allocatePivotFields(nrFields);
+		System.arraycopy(pivotPredicates, 0, retval.pivotPredicates, 0, nrFields);
+		System.arraycopy(pivotFieldNames, 0, retval.pivotFieldNames, 0, nrFields);
+		System.arraycopy(pivotAggregations, 0, retval.pivotAggregations, 0, nrFields);
+		int nrNamespaces = namespacePrefixes.length;
+		retval.allocateNamespaces(nrNamespaces);
+		System.arraycopy(namespacePrefixes, 0, retval.namespacePrefixes, 0, nrNamespaces);
+		System.arraycopy(namespaceIRIs, 0, retval.namespaceIRIs, 0, nrNamespaces);
 		return retval;
 	}
 
@@ -149,6 +295,66 @@ public class OpenRDFStepMeta extends BaseStepMeta implements StepMetaInterface {
 		StringBuffer xml = new StringBuffer();
 		xml.append(XMLHandler.addTagValue("repositoryURL", repositoryURL));
 		xml.append(XMLHandler.addTagValue("sparql", sparql));
+		xml.append(XMLHandler.addTagValue("resultFormat", resultFormat));
+		xml.append(XMLHandler.addTagValue("incremental", incremental));
+		xml.append(XMLHandler.addTagValue("watermarkBinding", watermarkBinding));
+		xml.append(XMLHandler.addTagValue("watermarkFile", watermarkFile));
+		xml.append(XMLHandler.addTagValue("watermarkVariable", watermarkVariable));
+		xml.append(XMLHandler.addTagValue("clientDistinct", clientDistinct));
+		xml.append(XMLHandler.addTagValue("distinctMemorySize", distinctMemorySize));
+		xml.append(XMLHandler.addTagValue("lookup", lookup));
+		xml.append(XMLHandler.addTagValue("lookupKeyField", lookupKeyField));
+		xml.append(XMLHandler.addTagValue("lookupKeyBinding", lookupKeyBinding));
+		xml.append(XMLHandler.addTagValue("lookupKeyIRI", lookupKeyIRI));
+		xml.append(XMLHandler.addTagValue("lookupPreload", lookupPreload));
+		xml.append(XMLHandler.addTagValue("lookupCacheSize", lookupCacheSize));
+		xml.append(XMLHandler.addTagValue("lookupBatchSize", lookupBatchSize));
+		xml.append(XMLHandler.addTagValue("includeInferred", includeInferred));
+		xml.append(XMLHandler.addTagValue("defaultGraphs", defaultGraphs));
+		xml.append(XMLHandler.addTagValue("namedGraphs", namedGraphs));
+		xml.append(XMLHandler.addTagValue("maxQueryTime", maxQueryTime));
+		xml.append(XMLHandler.addTagValue("maxConcurrentQueries", maxConcurrentQueries));
+		xml.append(XMLHandler.addTagValue("spoolResults", spoolResults));
+		xml.append(XMLHandler.addTagValue("spoolDirectory", spoolDirectory));
+		xml.append(XMLHandler.addTagValue("graphPartitioned", graphPartitioned));
+		xml.append(XMLHandler.addTagValue("graphField", graphField));
+		xml.append(XMLHandler.addTagValue("graphBalanceBySize", graphBalanceBySize));
+		xml.append(XMLHandler.addTagValue("pivot", pivot));
+		xml.append(XMLHandler.addTagValue("pivotSubjectBinding", pivotSubjectBinding));
+		xml.append(XMLHandler.addTagValue("pivotPredicateBinding", pivotPredicateBinding));
+		xml.append(XMLHandler.addTagValue("pivotObjectBinding", pivotObjectBinding));
+		xml.append(XMLHandler.addTagValue("pivotSeparator", pivotSeparator));
+		xml.append("    <pivotFields>").append(Const.CR);
+		for (int i = 0; i < pivotPredicates.length; i++) {
+			xml.append("      <field>").append(Const.CR);
+			xml.append("        ").append(XMLHandler.addTagValue("predicate", pivotPredicates[i]));
+			xml.append("        ").append(XMLHandler.addTagValue("name", pivotFieldNames[i]));
+			xml.append("        ").append(XMLHandler.addTagValue("aggregation", pivotAggregations[i]));
+			xml.append("      </field>").append(Const.CR);
+		}
+		xml.append("    </pivotFields>").append(Const.CR);
+		xml.append(XMLHandler.addTagValue("iriCompaction", iriCompaction));
+		xml.append("    <namespaces>").append(Const.CR);
+		for (int i = 0; i < namespacePrefixes.length; i++) {
+			xml.append("      <namespace>").append(Const.CR);
+			xml.append("        ").append(XMLHandler.addTagValue("prefix", namespacePrefixes[i]));
+			xml.append("        ").append(XMLHandler.addTagValue("iri", namespaceIRIs[i]));
+			xml.append("      </namespace>").append(Const.CR);
+		}
+		xml.append("    </namespaces>").append(Const.CR);
+		xml.append(XMLHandler.addTagValue("largeValueThreshold", largeValueThreshold));
+		xml.append(XMLHandler.addTagValue("largeValueFields", largeValueFields));
+		xml.append(XMLHandler.addTagValue("largeValueBinary", largeValueBinary));
+		xml.append(XMLHandler.addTagValue("largeValueDirectory", largeValueDirectory));
+		xml.append(XMLHandler.addTagValue("largeValueBudget", largeValueBudget));
+		xml.append(XMLHandler.addTagValue("dump", dump));
+		xml.append(XMLHandler.addTagValue("dumpFile", dumpFile));
+		xml.append(XMLHandler.addTagValue("dumpFormat", dumpFormat));
+		xml.append(XMLHandler.addTagValue("dumpCompressed", dumpCompressed));
+		xml.append(XMLHandler.addTagValue("snapshotDiff", snapshotDiff));
+		xml.append(XMLHandler.addTagValue("snapshotFile", snapshotFile));
+		xml.append(XMLHandler.addTagValue("snapshotKeys", snapshotKeys));
+		xml.append(XMLHandler.addTagValue("changeField", changeField));
 		return xml.toString();
 	}
 
@@ -168,6 +374,67 @@ public class OpenRDFStepMeta extends BaseStepMeta implements StepMetaInterface {
 		try {
 			setRepositoryURL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "repositoryURL")));
 			setSparql(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "sparql")));
+			setResultFormat(XMLHandler.getTagValue(stepnode, "resultFormat"));
+			setIncremental("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "incremental")));
+			setWatermarkBinding(XMLHandler.getTagValue(stepnode, "watermarkBinding"));
+			setWatermarkFile(XMLHandler.getTagValue(stepnode, "watermarkFile"));
+			setWatermarkVariable(XMLHandler.getTagValue(stepnode, "watermarkVariable"));
+			setClientDistinct("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "clientDistinct")));
+			setDistinctMemorySize(XMLHandler.getTagValue(stepnode, "distinctMemorySize"));
+			setLookup("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "lookup")));
+			setLookupKeyField(XMLHandler.getTagValue(stepnode, "lookupKeyField"));
+			setLookupKeyBinding(XMLHandler.getTagValue(stepnode, "lookupKeyBinding"));
+			setLookupKeyIRI("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "lookupKeyIRI")));
+			setLookupPreload("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "lookupPreload")));
+			setLookupCacheSize(XMLHandler.getTagValue(stepnode, "lookupCacheSize"));
+			setLookupBatchSize(XMLHandler.getTagValue(stepnode, "lookupBatchSize"));
+			// steps saved before the option existed included inferred statements
+			setIncludeInferred(!"N".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "includeInferred")));
+			setDefaultGraphs(XMLHandler.getTagValue(stepnode, "defaultGraphs"));
+			setNamedGraphs(XMLHandler.getTagValue(stepnode, "namedGraphs"));
+			setMaxQueryTime(XMLHandler.getTagValue(stepnode, "maxQueryTime"));
+			setMaxConcurrentQueries(XMLHandler.getTagValue(stepnode, "maxConcurrentQueries"));
+			setSpoolResults("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "spoolResults")));
+			setSpoolDirectory(XMLHandler.getTagValue(stepnode, "spoolDirectory"));
+			setGraphPartitioned("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "graphPartitioned")));
+			setGraphField(XMLHandler.getTagValue(stepnode, "graphField"));
+			setGraphBalanceBySize("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "graphBalanceBySize")));
+			setPivot("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "pivot")));
+			setPivotSubjectBinding(XMLHandler.getTagValue(stepnode, "pivotSubjectBinding"));
+			setPivotPredicateBinding(XMLHandler.getTagValue(stepnode, "pivotPredicateBinding"));
+			setPivotObjectBinding(XMLHandler.getTagValue(stepnode, "pivotObjectBinding"));
+			setPivotSeparator(XMLHandler.getTagValue(stepnode, "pivotSeparator"));
+			Node pivotFields = XMLHandler.getSubNode(stepnode, "pivotFields");
+			int nrFields = pivotFields == null ? 0 : XMLHandler.countNodes(pivotFields, "field");
+			allocatePivotFields(nrFields);
+			for (int i = 0; i < nrFields; i++) {
+				Node field = XMLHandler.getSubNodeByNr(pivotFields, "field", i);
+				pivotPredicates[i] = XMLHandler.getTagValue(field, "predicate");
+				pivotFieldNames[i] = XMLHandler.getTagValue(field, "name");
+				pivotAggregations[i] = XMLHandler.getTagValue(field, "aggregation");
+			}
+			setIriCompaction(XMLHandler.getTagValue(stepnode, "iriCompaction"));
+			Node namespaces = XMLHandler.getSubNode(stepnode, "namespaces");
+			int nrNamespaces = namespaces == null ? 0 : XMLHandler.countNodes(namespaces, "namespace");
+			allocateNamespaces(nrNamespaces);
+			for (int i = 0; i < nrNamespaces; i++) {
+				Node namespace = XMLHandler.getSubNodeByNr(namespaces, "namespace", i);
+				namespacePrefixes[i] = XMLHandler.getTagValue(namespace, "prefix");
+				namespaceIRIs[i] = XMLHandler.getTagValue(namespace, "iri");
+			}
+			setLargeValueThreshold(XMLHandler.getTagValue(stepnode, "largeValueThreshold"));
+			setLargeValueFields(XMLHandler.getTagValue(stepnode, "largeValueFields"));
+			setLargeValueBinary("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "largeValueBinary")));
+			setLargeValueDirectory(XMLHandler.getTagValue(stepnode, "largeValueDirectory"));
+			setLargeValueBudget(XMLHandler.getTagValue(stepnode, "largeValueBudget"));
+			setDump("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "dump")));
+			setDumpFile(XMLHandler.getTagValue(stepnode, "dumpFile"));
+			setDumpFormat(XMLHandler.getTagValue(stepnode, "dumpFormat"));
+			setDumpCompressed("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "dumpCompressed")));
+			setSnapshotDiff("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "snapshotDiff")));
+			setSnapshotFile(XMLHandler.getTagValue(stepnode, "snapshotFile"));
+			setSnapshotKeys(XMLHandler.getTagValue(stepnode, "snapshotKeys"));
+			setChangeField(XMLHandler.getTagValue(stepnode, "changeField"));
 		} catch (Exception e) {
 			throw new KettleXMLException("OpenRDF plugin unable to read step info from XML node", e);
 		}
@@ -188,6 +455,58 @@ public class OpenRDFStepMeta extends BaseStepMeta implements StepMetaInterface {
 		try {
 			rep.saveStepAttribute(id_transformation, id_step, "repositoryURL", repositoryURL); //$NON-NLS-1$
 			rep.saveStepAttribute(id_transformation, id_step, "sparql", sparql); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "resultFormat", resultFormat); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "incremental", incremental); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "watermarkBinding", watermarkBinding); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "watermarkFile", watermarkFile); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "watermarkVariable", watermarkVariable); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "clientDistinct", clientDistinct); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "distinctMemorySize", distinctMemorySize); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "lookup", lookup); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "lookupKeyField", lookupKeyField); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "lookupKeyBinding", lookupKeyBinding); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "lookupKeyIRI", lookupKeyIRI); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "lookupPreload", lookupPreload); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "lookupCacheSize", lookupCacheSize); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "lookupBatchSize", lookupBatchSize); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "includeInferred", includeInferred); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "defaultGraphs", defaultGraphs); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "namedGraphs", namedGraphs); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "maxQueryTime", maxQueryTime); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "maxConcurrentQueries", maxConcurrentQueries); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "spoolResults", spoolResults); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "spoolDirectory", spoolDirectory); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "graphPartitioned", graphPartitioned); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "graphField", graphField); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "graphBalanceBySize", graphBalanceBySize); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "pivot", pivot); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "pivotSubjectBinding", pivotSubjectBinding); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "pivotPredicateBinding", pivotPredicateBinding); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "pivotObjectBinding", pivotObjectBinding); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "pivotSeparator", pivotSeparator); //$NON-NLS-1$
+			for (int i = 0; i < pivotPredicates.length; i++) {
+				rep.saveStepAttribute(id_transformation, id_step, i, "pivotPredicate", pivotPredicates[i]); //$NON-NLS-1$
+				rep.saveStepAttribute(id_transformation, id_step, i, "pivotFieldName", pivotFieldNames[i]); //$NON-NLS-1$
+				rep.saveStepAttribute(id_transformation, id_step, i, "pivotAggregation", pivotAggregations[i]); //$NON-NLS-1$
+			}
+			rep.saveStepAttribute(id_transformation, id_step, "iriCompaction", iriCompaction); //$NON-NLS-1$
+			for (int i = 0; i < namespacePrefixes.length; i++) {
+				rep.saveStepAttribute(id_transformation, id_step, i, "namespacePrefix", namespacePrefixes[i]); //$NON-NLS-1$
+				rep.saveStepAttribute(id_transformation, id_step, i, "namespaceIRI", namespaceIRIs[i]); //$NON-NLS-1$
+			}
+			rep.saveStepAttribute(id_transformation, id_step, "largeValueThreshold", largeValueThreshold); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "largeValueFields", largeValueFields); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "largeValueBinary", largeValueBinary); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "largeValueDirectory", largeValueDirectory); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "largeValueBudget", largeValueBudget); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "dump", dump); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "dumpFile", dumpFile); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "dumpFormat", dumpFormat); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "dumpCompressed", dumpCompressed); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "snapshotDiff", snapshotDiff); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "snapshotFile", snapshotFile); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "snapshotKeys", snapshotKeys); //$NON-NLS-1$
+			rep.saveStepAttribute(id_transformation, id_step, "changeField", changeField); //$NON-NLS-1$
 		} catch (Exception e) {
 			throw new KettleException("Unable to save step into repository: " + id_step, e);
 		}
@@ -209,6 +528,62 @@ public class OpenRDFStepMeta extends BaseStepMeta implements StepMetaInterface {
 		try {
 			repositoryURL = rep.getStepAttributeString(id_step, "repositoryURL"); //$NON-NLS-1$
 			sparql = rep.getStepAttributeString(id_step, "sparql"); //$NON-NLS-1$
+			resultFormat = rep.getStepAttributeString(id_step, "resultFormat"); //$NON-NLS-1$
+			incremental = rep.getStepAttributeBoolean(id_step, "incremental"); //$NON-NLS-1$
+			watermarkBinding = rep.getStepAttributeString(id_step, "watermarkBinding"); //$NON-NLS-1$
+			watermarkFile = rep.getStepAttributeString(id_step, "watermarkFile"); //$NON-NLS-1$
+			watermarkVariable = rep.getStepAttributeString(id_step, "watermarkVariable"); //$NON-NLS-1$
+			clientDistinct = rep.getStepAttributeBoolean(id_step, "clientDistinct"); //$NON-NLS-1$
+			distinctMemorySize = rep.getStepAttributeString(id_step, "distinctMemorySize"); //$NON-NLS-1$
+			lookup = rep.getStepAttributeBoolean(id_step, "lookup"); //$NON-NLS-1$
+			lookupKeyField = rep.getStepAttributeString(id_step, "lookupKeyField"); //$NON-NLS-1$
+			lookupKeyBinding = rep.getStepAttributeString(id_step, "lookupKeyBinding"); //$NON-NLS-1$
+			lookupKeyIRI = rep.getStepAttributeBoolean(id_step, "lookupKeyIRI"); //$NON-NLS-1$
+			lookupPreload = rep.getStepAttributeBoolean(id_step, "lookupPreload"); //$NON-NLS-1$
+			lookupCacheSize = rep.getStepAttributeString(id_step, "lookupCacheSize"); //$NON-NLS-1$
+			lookupBatchSize = rep.getStepAttributeString(id_step, "lookupBatchSize"); //$NON-NLS-1$
+			includeInferred = rep.getStepAttributeBoolean(id_step, 0, "includeInferred", true); //$NON-NLS-1$
+			defaultGraphs = rep.getStepAttributeString(id_step, "defaultGraphs"); //$NON-NLS-1$
+			namedGraphs = rep.getStepAttributeString(id_step, "namedGraphs"); //$NON-NLS-1$
+			maxQueryTime = rep.getStepAttributeString(id_step, "maxQueryTime"); //$NON-NLS-1$
+			maxConcurrentQueries = rep.getStepAttributeString(id_step, "maxConcurrentQueries"); //$NON-NLS-1$
+			spoolResults = rep.getStepAttributeBoolean(id_step, "spoolResults"); //$NON-NLS-1$
+			spoolDirectory = rep.getStepAttributeString(id_step, "spoolDirectory"); //$NON-NLS-1$
+			graphPartitioned = rep.getStepAttributeBoolean(id_step, "graphPartitioned"); //$NON-NLS-1$
+			graphField = rep.getStepAttributeString(id_step, "graphField"); //$NON-NLS-1$
+			graphBalanceBySize = rep.getStepAttributeBoolean(id_step, "graphBalanceBySize"); //$NON-NLS-1$
+			pivot = rep.getStepAttributeBoolean(id_step, "pivot"); //$NON-NLS-1$
+			pivotSubjectBinding = rep.getStepAttributeString(id_step, "pivotSubjectBinding"); //$NON-NLS-1$
+			pivotPredicateBinding = rep.getStepAttributeString(id_step, "pivotPredicateBinding"); //$NON-NLS-1$
+			pivotObjectBinding = rep.getStepAttributeString(id_step, "pivotObjectBinding"); //$NON-NLS-1$
+			pivotSeparator = rep.getStepAttributeString(id_step, "pivotSeparator"); //$NON-NLS-1$
+			int nrFields = rep.countNrStepAttributes(id_step, "pivotPredicate"); //$NON-NLS-1$
+			allocatePivotFields(nrFields);
+			for (int i = 0; i < nrFields; i++) {
+				pivotPredicates[i] = rep.getStepAttributeString(id_step, i, "pivotPredicate"); //$NON-NLS-1$
+				pivotFieldNames[i] = rep.getStepAttributeString(id_step, i, "pivotFieldName"); //$NON-NLS-1$
+				pivotAggregations[i] = rep.getStepAttributeString(id_step, i, "pivotAggregation"); //$NON-NLS-1$
+			}
+			iriCompaction = rep.getStepAttributeString(id_step, "iriCompaction"); //$NON-NLS-1$
+			int nrNamespaces = rep.countNrStepAttributes(id_step, "namespaceIRI"); //$NON-NLS-1$
+			allocateNamespaces(nrNamespaces);
+			for (int i = 0; i < nrNamespaces; i++) {
+				namespacePrefixes[i] = rep.getStepAttributeString(id_step, i, "namespacePrefix"); //$NON-NLS-1$
+				namespaceIRIs[i] = rep.getStepAttributeString(id_step, i, "namespaceIRI"); //$NON-NLS-1$
+			}
+			largeValueThreshold = rep.getStepAttributeString(id_step, "largeValueThreshold"); //$NON-NLS-1$
+			largeValueFields = rep.getStepAttributeString(id_step, "largeValueFields"); //$NON-NLS-1$
+			largeValueBinary = rep.getStepAttributeBoolean(id_step, "largeValueBinary"); //$NON-NLS-1$
+			largeValueDirectory = rep.getStepAttributeString(id_step, "largeValueDirectory"); //$NON-NLS-1$
+			largeValueBudget = rep.getStepAttributeString(id_step, "largeValueBudget"); //$NON-NLS-1$
+			dump = rep.getStepAttributeBoolean(id_step, "dump"); //$NON-NLS-1$
+			dumpFile = rep.getStepAttributeString(id_step, "dumpFile"); //$NON-NLS-1$
+			dumpFormat = rep.getStepAttributeString(id_step, "dumpFormat"); //$NON-NLS-1$
+			dumpCompressed = rep.getStepAttributeBoolean(id_step, "dumpCompressed"); //$NON-NLS-1$
+			snapshotDiff = rep.getStepAttributeBoolean(id_step, "snapshotDiff"); //$NON-NLS-1$
+			snapshotFile = rep.getStepAttributeString(id_step, "snapshotFile"); //$NON-NLS-1$
+			snapshotKeys = rep.getStepAttributeString(id_step, "snapshotKeys"); //$NON-NLS-1$
+			changeField = rep.getStepAttributeString(id_step, "changeField"); //$NON-NLS-1$
 		} catch (Exception e) {
 			throw new KettleException("Unable to load step from repository", e);
 		}
@@ -231,6 +606,21 @@ public class OpenRDFStepMeta extends BaseStepMeta implements StepMetaInterface {
 	 *            the variable space for resolving variables
 	 */
 	public void getFields(RowMetaInterface r, String origin, RowMetaInterface[] info, StepMeta nextStep, VariableSpace space) {
+		if (isDumping()) {
+			if (isGraphFromInput()) {
+				r.clear();
+			}
+			getDumpFields(r, origin);
+			return;
+		}
+		if (pivot) {
+			// the columns are configured, no need to ask the repository
+			if (isGraphFromInput()) {
+				r.clear();
+			}
+			getPivotFields(r, origin, space);
+			return;
+		}
 		OpenRDFStepData data = new OpenRDFStepData();
 		try {
 			String repositoryURL = space.environmentSubstitute(getRepositoryURL());
@@ -241,14 +631,39 @@ public class OpenRDFStepMeta extends BaseStepMeta implements StepMetaInterface {
 			}
 			data.runQuery(sparql);
 			List<String> fields = data.getTupleQueryResult().getBindingNames();
+			if (isGraphFromInput()) {
+				// the rows naming the graphs are consumed, not passed on
+				r.clear();
+			}
+			String keyBinding = lookup ? space.environmentSubstitute(getLookupKeyBinding()) : null;
 			if (fields != null) {
+				List<String> largeFields = getLargeValueFields(fields, space);
 				for (String field : fields) {
+					if (field.equals(keyBinding)) {
+						// in lookup mode the key binding matches a field that is already in the row
+						continue;
+					}
 					ValueMetaInterface valueMeta = new ValueMeta();
 					valueMeta.setName(field);
-					valueMeta.setType(ValueMeta.TYPE_STRING);
+					valueMeta.setType(largeValueBinary && largeFields.contains(field) ? ValueMeta.TYPE_BINARY : ValueMeta.TYPE_STRING);
 					valueMeta.setTrimType(ValueMeta.TRIM_TYPE_BOTH);
 					valueMeta.setOrigin(origin);
 					r.addValueMeta(valueMeta);
+					if (isCompactingIris() && IriCompactor.SPLIT.equals(iriCompaction)) {
+						ValueMetaInterface namespaceMeta = new ValueMeta(field + IriCompactor.NAMESPACE_SUFFIX, ValueMeta.TYPE_STRING);
+						namespaceMeta.setOrigin(origin);
+						r.addValueMeta(namespaceMeta);
+					}
+				}
+				for (String field : largeFields) {
+					ValueMetaInterface fileMeta = new ValueMeta(field + LargeValueHandler.FILE_SUFFIX, ValueMeta.TYPE_STRING);
+					fileMeta.setOrigin(origin);
+					r.addValueMeta(fileMeta);
+				}
+				if (isDiffingSnapshot()) {
+					ValueMetaInterface changeMeta = new ValueMeta(space.environmentSubstitute(changeField), ValueMeta.TYPE_STRING);
+					changeMeta.setOrigin(origin);
+					r.addValueMeta(changeMeta);
 				}
 			}
 		} catch (RepositoryException e) {
@@ -262,6 +677,52 @@ public class OpenRDFStepMeta extends BaseStepMeta implements StepMetaInterface {
 		}
 	}
 
+	/**
+	 * @param bindingNames the bindings of the query
+	 * @return the bindings that may hold large values, in the order of the query, or an empty list when large values are not handled
+	 */
+	public List<String> getLargeValueFields(List<String> bindingNames, VariableSpace space) {
+		List<String> largeFields = new ArrayList<String>();
+		if (!isHandlingLargeValues()) {
+			return largeFields;
+		}
+		String names = space.environmentSubstitute(largeValueFields);
+		List<String> selected = Const.isEmpty(names) ? bindingNames : Arrays.asList(names.trim().split("[,\\s]+"));
+		for (String bindingName : bindingNames) {
+			if (selected.contains(bindingName)) {
+				largeFields.add(bindingName);
+			}
+		}
+		return largeFields;
+	}
+
+	/**
+	 * Adds the fields of the summary row of a dump.
+	 */
+	public void getDumpFields(RowMetaInterface r, String origin) {
+		String[] names = new String[] { RdfDump.FILE_FIELD, RdfDump.STATEMENTS_FIELD, RdfDump.BYTES_FIELD, RdfDump.DURATION_FIELD };
+		for (int i = 0; i < names.length; i++) {
+			ValueMetaInterface valueMeta = new ValueMeta(names[i], i == 0 ? ValueMeta.TYPE_STRING : ValueMeta.TYPE_INTEGER);
+			valueMeta.setOrigin(origin);
+			r.addValueMeta(valueMeta);
+		}
+	}
+
+	/**
+	 * Adds the fields of a pivoted row: the subject, followed by a field per configured predicate.
+	 */
+	public void getPivotFields(RowMetaInterface r, String origin, VariableSpace space) {
+		ValueMetaInterface subjectMeta = new ValueMeta(space.environmentSubstitute(pivotSubjectBinding), ValueMeta.TYPE_STRING);
+		subjectMeta.setOrigin(origin);
+		r.addValueMeta(subjectMeta);
+		for (int i = 0; i < pivotFieldNames.length; i++) {
+			int type = EntityPivot.COUNT.equals(pivotAggregations[i]) ? ValueMeta.TYPE_INTEGER : ValueMeta.TYPE_STRING;
+			ValueMetaInterface valueMeta = new ValueMeta(pivotFieldNames[i], type);
+			valueMeta.setOrigin(origin);
+			r.addValueMeta(valueMeta);
+		}
+	}
+
 	/**
 	 * This method is called when the user selects the "Verify Transformation" option in Spoon. A list of remarks is passed in that this method should add to. Each remark is a comment, warning, error, or ok. The method should perform as many checks as necessary to catch design-time errors.
 	 * 
@@ -284,14 +745,79 @@ public class OpenRDFStepMeta extends BaseStepMeta implements StepMetaInterface {
 	 */
 	public void check(List<CheckResultInterface> remarks, TransMeta transmeta, StepMeta stepMeta, RowMetaInterface prev, String input[], String output[], RowMetaInterface info) {
 		CheckResult cr;
-		// No input steps allowed to lead into this step (for now at least).
-		if (input.length > 0) {
+		if (lookup || isGraphFromInput()) {
+			// A lookup enriches the rows of the steps leading into it, graphs can be read from them
+			if (input.length == 0) {
+				cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.ExpectingRows.ERROR"), stepMeta);
+				remarks.add(cr);
+			} else {
+				cr = new CheckResult(CheckResult.TYPE_RESULT_OK, BaseMessages.getString(PKG, "OpenRDF.CheckResult.ExpectingRows.OK"), stepMeta);
+				remarks.add(cr);
+			}
+			if (lookup && (Const.isEmpty(lookupKeyField) || Const.isEmpty(lookupKeyBinding))) {
+				cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.LookupKey.ERROR"), stepMeta);
+				remarks.add(cr);
+			}
+		} else if (input.length > 0) {
+			// No input steps allowed to lead into this step, unless it does a lookup or reads graphs from them.
 			cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.ReceivingRows.ERROR"), stepMeta);
 			remarks.add(cr);
 		} else {
 			cr = new CheckResult(CheckResult.TYPE_RESULT_OK, BaseMessages.getString(PKG, "OpenRDF.CheckResult.ReceivingRows.OK"), stepMeta);
 			remarks.add(cr);
 		}
+		if (incremental) {
+			if (Const.isEmpty(watermarkBinding)) {
+				cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.WatermarkBinding.ERROR"), stepMeta);
+				remarks.add(cr);
+			} else if (!Const.isEmpty(sparql) && SparqlRewriter.isProjectedExpression(sparql, watermarkBinding)) {
+				cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.WatermarkProjected.ERROR"), stepMeta);
+				remarks.add(cr);
+			}
+			if (Const.isEmpty(watermarkFile) && Const.isEmpty(watermarkVariable)) {
+				cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.WatermarkStore.ERROR"), stepMeta);
+				remarks.add(cr);
+			}
+		}
+		if (dump) {
+			if (Const.isEmpty(dumpFile) || Const.isEmpty(dumpFormat)) {
+				cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.DumpFile.ERROR"), stepMeta);
+				remarks.add(cr);
+			} else if (RdfDump.getFormat(dumpFormat) == null) {
+				cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.DumpFormat.ERROR", dumpFormat), stepMeta);
+				remarks.add(cr);
+			}
+			if (lookup) {
+				cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.DumpLookup.ERROR"), stepMeta);
+				remarks.add(cr);
+			}
+		}
+		if (!Const.isEmpty(largeValueThreshold) && (lookup || pivot || isDiffingSnapshot())) {
+			cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.LargeValues.ERROR"), stepMeta);
+			remarks.add(cr);
+		}
+		if (isDiffingSnapshot() && (Const.isEmpty(snapshotFile) || Const.isEmpty(snapshotKeys) || Const.isEmpty(changeField))) {
+			cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.Snapshot.ERROR"), stepMeta);
+			remarks.add(cr);
+		}
+		if (!Const.isEmpty(maxConcurrentQueries) && !spoolResults) {
+			cr = new CheckResult(CheckResult.TYPE_RESULT_WARNING, BaseMessages.getString(PKG, "OpenRDF.CheckResult.GovernorSpool.WARNING"), stepMeta);
+			remarks.add(cr);
+		}
+		if (isDiffingSnapshot() && graphPartitioned && stepMeta.getCopies() > 1) {
+			cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.SnapshotPartitioned.ERROR"), stepMeta);
+			remarks.add(cr);
+		}
+		if (pivot) {
+			if (lookup) {
+				cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.PivotLookup.ERROR"), stepMeta);
+				remarks.add(cr);
+			}
+			if (Const.isEmpty(pivotSubjectBinding) || Const.isEmpty(pivotPredicateBinding) || Const.isEmpty(pivotObjectBinding) || pivotPredicates.length == 0) {
+				cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, BaseMessages.getString(PKG, "OpenRDF.CheckResult.PivotFields.ERROR"), stepMeta);
+				remarks.add(cr);
+			}
+		}
 	}
 	
 	public String getRepositoryURL() {
@@ -309,5 +835,521 @@ public class OpenRDFStepMeta extends BaseStepMeta implements StepMetaInterface {
 	public void setSparql(String sparql) {
 		this.sparql = sparql;
 	}
+
+	/**
+	 * @return the name of the query result format to ask the server for, or empty for the repository default
+	 */
+	public String getResultFormat() {
+		return resultFormat;
+	}
+
+	public void setResultFormat(String resultFormat) {
+		this.resultFormat = resultFormat;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public String getWatermarkBinding() {
+		return watermarkBinding;
+	}
+
+	public void setWatermarkBinding(String watermarkBinding) {
+		this.watermarkBinding = watermarkBinding;
+	}
+
+	public String getWatermarkFile() {
+		return watermarkFile;
+	}
+
+	public void setWatermarkFile(String watermarkFile) {
+		this.watermarkFile = watermarkFile;
+	}
+
+	public String getWatermarkVariable() {
+		return watermarkVariable;
+	}
+
+	public void setWatermarkVariable(String watermarkVariable) {
+		this.watermarkVariable = watermarkVariable;
+	}
+
+	public boolean isClientDistinct() {
+		return clientDistinct;
+	}
+
+	public void setClientDistinct(boolean clientDistinct) {
+		this.clientDistinct = clientDistinct;
+	}
+
+	/**
+	 * @return the memory budget, in megabytes, for the fingerprints of distinct rows before they spill to disk
+	 */
+	public String getDistinctMemorySize() {
+		return distinctMemorySize;
+	}
+
+	public void setDistinctMemorySize(String distinctMemorySize) {
+		this.distinctMemorySize = distinctMemorySize;
+	}
+
+	/**
+	 * @return true if the step looks up values for the rows it receives, instead of generating rows
+	 */
+	public boolean isLookup() {
+		return lookup;
+	}
+
+	public void setLookup(boolean lookup) {
+		this.lookup = lookup;
+	}
+
+	public String getLookupKeyField() {
+		return lookupKeyField;
+	}
+
+	public void setLookupKeyField(String lookupKeyField) {
+		this.lookupKeyField = lookupKeyField;
+	}
+
+	public String getLookupKeyBinding() {
+		return lookupKeyBinding;
+	}
+
+	public void setLookupKeyBinding(String lookupKeyBinding) {
+		this.lookupKeyBinding = lookupKeyBinding;
+	}
+
+	/**
+	 * @return true if the keys are IRIs, false if they are plain literals
+	 */
+	public boolean isLookupKeyIRI() {
+		return lookupKeyIRI;
+	}
+
+	public void setLookupKeyIRI(boolean lookupKeyIRI) {
+		this.lookupKeyIRI = lookupKeyIRI;
+	}
+
+	public boolean isLookupPreload() {
+		return lookupPreload;
+	}
+
+	public void setLookupPreload(boolean lookupPreload) {
+		this.lookupPreload = lookupPreload;
+	}
+
+	public String getLookupCacheSize() {
+		return lookupCacheSize;
+	}
+
+	public void setLookupCacheSize(String lookupCacheSize) {
+		this.lookupCacheSize = lookupCacheSize;
+	}
+
+	public String getLookupBatchSize() {
+		return lookupBatchSize;
+	}
+
+	public void setLookupBatchSize(String lookupBatchSize) {
+		this.lookupBatchSize = lookupBatchSize;
+	}
+
+	/**
+	 * @return true if queries see inferred statements as well as explicit ones
+	 */
+	public boolean isIncludeInferred() {
+		return includeInferred;
+	}
+
+	public void setIncludeInferred(boolean includeInferred) {
+		this.includeInferred = includeInferred;
+	}
+
+	/**
+	 * @return the graphs making up the default graph of every query, separated by commas, or empty for the repository default
+	 */
+	public String getDefaultGraphs() {
+		return defaultGraphs;
+	}
+
+	public void setDefaultGraphs(String defaultGraphs) {
+		this.defaultGraphs = defaultGraphs;
+	}
+
+	/**
+	 * @return the graphs GRAPH patterns may match, separated by commas, or empty for all
+	 */
+	public String getNamedGraphs() {
+		return namedGraphs;
+	}
+
+	public void setNamedGraphs(String namedGraphs) {
+		this.namedGraphs = namedGraphs;
+	}
+
+	/**
+	 * @return the time in seconds after which the server stops a query, or empty for no limit
+	 */
+	public String getMaxQueryTime() {
+		return maxQueryTime;
+	}
+
+	public void setMaxQueryTime(String maxQueryTime) {
+		this.maxQueryTime = maxQueryTime;
+	}
+
+	/**
+	 * @return the maximum number of queries running against the repository at the same time across the JVM,
+	 * or empty to use the OPENRDF_MAX_CONCURRENT_QUERIES variable
+	 */
+	public String getMaxConcurrentQueries() {
+		return maxConcurrentQueries;
+	}
+
+	public void setMaxConcurrentQueries(String maxConcurrentQueries) {
+		this.maxConcurrentQueries = maxConcurrentQueries;
+	}
+
+	/**
+	 * @return true if query results are received into a local file before the rows are passed on
+	 */
+	public boolean isSpoolResults() {
+		return spoolResults;
+	}
+
+	public void setSpoolResults(boolean spoolResults) {
+		this.spoolResults = spoolResults;
+	}
+
+	/**
+	 * @return the local directory for spool files, or empty for the temporary directory
+	 */
+	public String getSpoolDirectory() {
+		return spoolDirectory;
+	}
+
+	public void setSpoolDirectory(String spoolDirectory) {
+		this.spoolDirectory = spoolDirectory;
+	}
+
+	/**
+	 * @return true if the query runs once per named graph, with the graphs spread over the step copies
+	 */
+	public boolean isGraphPartitioned() {
+		return graphPartitioned;
+	}
+
+	public void setGraphPartitioned(boolean graphPartitioned) {
+		this.graphPartitioned = graphPartitioned;
+	}
+
+	/**
+	 * @return the input field naming the graphs to extract, or empty to list the graphs of the repository
+	 */
+	public String getGraphField() {
+		return graphField;
+	}
+
+	public void setGraphField(String graphField) {
+		this.graphField = graphField;
+	}
+
+	private boolean isGraphFromInput() {
+		return graphPartitioned && !Const.isEmpty(graphField);
+	}
+
+	/**
+	 * @return true if graphs are spread over the copies by their number of statements, rather than by count
+	 */
+	public boolean isGraphBalanceBySize() {
+		return graphBalanceBySize;
+	}
+
+	public void setGraphBalanceBySize(boolean graphBalanceBySize) {
+		this.graphBalanceBySize = graphBalanceBySize;
+	}
+
+	/**
+	 * @return how IRIs in output rows are shortened: empty for not at all, prefixed or split
+	 */
+	public String getIriCompaction() {
+		return iriCompaction;
+	}
+
+	public void setIriCompaction(String iriCompaction) {
+		this.iriCompaction = iriCompaction;
+	}
+
+	/**
+	 * IRI compaction applies to rows made from single solutions, not to looked up or pivoted values.
+	 */
+	public boolean isCompactingIris() {
+		return !Const.isEmpty(iriCompaction) && !lookup && !pivot;
+	}
+
+	/**
+	 * @return the prefix of each namespace in the namespace table
+	 */
+	public String[] getNamespacePrefixes() {
+		return namespacePrefixes;
+	}
+
+	public void setNamespacePrefixes(String[] namespacePrefixes) {
+		this.namespacePrefixes = namespacePrefixes;
+	}
+
+	/**
+	 * @return the IRI of each namespace in the namespace table
+	 */
+	public String[] getNamespaceIRIs() {
+		return namespaceIRIs;
+	}
+
+	public void setNamespaceIRIs(String[] namespaceIRIs) {
+		this.namespaceIRIs = namespaceIRIs;
+	}
+
+	/**
+	 * Large values are handled in rows made from single solutions, when they are not compared with a snapshot.
+	 */
+	public boolean isHandlingLargeValues() {
+		return !Const.isEmpty(largeValueThreshold) && !lookup && !pivot && !isDiffingSnapshot();
+	}
+
+	/**
+	 * @return the number of characters above which a value is kept out of the row, or empty to keep every value in the row
+	 */
+	public String getLargeValueThreshold() {
+		return largeValueThreshold;
+	}
+
+	public void setLargeValueThreshold(String largeValueThreshold) {
+		this.largeValueThreshold = largeValueThreshold;
+	}
+
+	/**
+	 * @return the bindings that may hold large values, separated by commas, or empty for all
+	 */
+	public String getLargeValueFields() {
+		return largeValueFields;
+	}
+
+	public void setLargeValueFields(String largeValueFields) {
+		this.largeValueFields = largeValueFields;
+	}
+
+	/**
+	 * @return true if the fields that may hold large values are binary, keeping large values in the row within the budget
+	 */
+	public boolean isLargeValueBinary() {
+		return largeValueBinary;
+	}
+
+	public void setLargeValueBinary(boolean largeValueBinary) {
+		this.largeValueBinary = largeValueBinary;
+	}
+
+	/**
+	 * @return the directory large values are written to, or empty for the temporary directory
+	 */
+	public String getLargeValueDirectory() {
+		return largeValueDirectory;
+	}
+
+	public void setLargeValueDirectory(String largeValueDirectory) {
+		this.largeValueDirectory = largeValueDirectory;
+	}
+
+	/**
+	 * @return the megabytes large values in binary fields may take in the rows on their way downstream
+	 */
+	public String getLargeValueBudget() {
+		return largeValueBudget;
+	}
+
+	public void setLargeValueBudget(String largeValueBudget) {
+		this.largeValueBudget = largeValueBudget;
+	}
+
+	/**
+	 * @return true if statements are written to a file instead of being passed on as rows
+	 */
+	public boolean isDump() {
+		return dump;
+	}
+
+	public void setDump(boolean dump) {
+		this.dump = dump;
+	}
+
+	/**
+	 * A dump takes the place of every other kind of output, except lookups, which need rows to enrich.
+	 */
+	public boolean isDumping() {
+		return dump && !lookup;
+	}
+
+	public String getDumpFile() {
+		return dumpFile;
+	}
+
+	public void setDumpFile(String dumpFile) {
+		this.dumpFile = dumpFile;
+	}
+
+	/**
+	 * @return the name of the RDF format to dump in, such as N-Triples or TriG
+	 */
+	public String getDumpFormat() {
+		return dumpFormat;
+	}
+
+	public void setDumpFormat(String dumpFormat) {
+		this.dumpFormat = dumpFormat;
+	}
+
+	/**
+	 * @return true if the dump file is gzipped
+	 */
+	public boolean isDumpCompressed() {
+		return dumpCompressed;
+	}
+
+	public void setDumpCompressed(boolean dumpCompressed) {
+		this.dumpCompressed = dumpCompressed;
+	}
+
+	/**
+	 * @return true if only rows that are new, changed or deleted since the previous run are passed on
+	 */
+	public boolean isSnapshotDiff() {
+		return snapshotDiff;
+	}
+
+	public void setSnapshotDiff(boolean snapshotDiff) {
+		this.snapshotDiff = snapshotDiff;
+	}
+
+	/**
+	 * The snapshot diff applies to rows made from single solutions, not to looked up or pivoted values.
+	 */
+	public boolean isDiffingSnapshot() {
+		return snapshotDiff && !lookup && !pivot;
+	}
+
+	/**
+	 * @return the local file holding the snapshot of the previous successful run
+	 */
+	public String getSnapshotFile() {
+		return snapshotFile;
+	}
+
+	public void setSnapshotFile(String snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+
+	/**
+	 * @return the bindings that identify a row, separated by commas
+	 */
+	public String getSnapshotKeys() {
+		return snapshotKeys;
+	}
+
+	public void setSnapshotKeys(String snapshotKeys) {
+		this.snapshotKeys = snapshotKeys;
+	}
+
+	/**
+	 * @return the name of the field flagging a row as new, changed or deleted
+	 */
+	public String getChangeField() {
+		return changeField;
+	}
+
+	public void setChangeField(String changeField) {
+		this.changeField = changeField;
+	}
+
+	/**
+	 * @return true if the solutions for each subject are pivoted into one row, with a field per configured predicate
+	 */
+	public boolean isPivot() {
+		return pivot;
+	}
+
+	public void setPivot(boolean pivot) {
+		this.pivot = pivot;
+	}
+
+	public String getPivotSubjectBinding() {
+		return pivotSubjectBinding;
+	}
+
+	public void setPivotSubjectBinding(String pivotSubjectBinding) {
+		this.pivotSubjectBinding = pivotSubjectBinding;
+	}
+
+	public String getPivotPredicateBinding() {
+		return pivotPredicateBinding;
+	}
+
+	public void setPivotPredicateBinding(String pivotPredicateBinding) {
+		this.pivotPredicateBinding = pivotPredicateBinding;
+	}
+
+	public String getPivotObjectBinding() {
+		return pivotObjectBinding;
+	}
+
+	public void setPivotObjectBinding(String pivotObjectBinding) {
+		this.pivotObjectBinding = pivotObjectBinding;
+	}
+
+	/**
+	 * @return the separator between the objects of a concatenated field
+	 */
+	public String getPivotSeparator() {
+		return pivotSeparator;
+	}
+
+	public void setPivotSeparator(String pivotSeparator) {
+		this.pivotSeparator = pivotSeparator;
+	}
+
+	/**
+	 * @return the predicate IRI of each pivot field
+	 */
+	public String[] getPivotPredicates() {
+		return pivotPredicates;
+	}
+
+	public void setPivotPredicates(String[] pivotPredicates) {
+		this.pivotPredicates = pivotPredicates;
+	}
+
+	public String[] getPivotFieldNames() {
+		return pivotFieldNames;
+	}
+
+	public void setPivotFieldNames(String[] pivotFieldNames) {
+		this.pivotFieldNames = pivotFieldNames;
+	}
+
+	/**
+	 * @return how each pivot field handles several objects: first, concat or count
+	 */
+	public String[] getPivotAggregations() {
+		return pivotAggregations;
+	}
+
+	public void setPivotAggregations(String[] pivotAggregations) {
+		this.pivotAggregations = pivotAggregations;
+	}
 	
 }
@@ -0,0 +1,175 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.RDFWriterRegistry;
+import org.openrdf.rio.Rio;
+
+/**
+ * Writes statements straight from the repository to a file, without turning them into rows.
+ *
+ * Several exports can go into one dump, for instance one per named graph: the document is started
+ * when the dump is opened and ended when it is closed, the start and end of each export are ignored.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class RdfDump implements RDFHandler {
+
+	public static final String FILE_FIELD = "file";
+	public static final String STATEMENTS_FIELD = "statements";
+	public static final String BYTES_FIELD = "bytes";
+	public static final String DURATION_FIELD = "duration";
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final CountingOutputStream file;
+	private final OutputStream out;
+	private final RDFWriter writer;
+	private final long start;
+	private long statements;
+
+	/**
+	 * @param out the file to write to, which is closed with the dump
+	 * @param format the RDF format to write, which needs a writer on the classpath
+	 * @param compress true to gzip the output
+	 */
+	public RdfDump(OutputStream out, RDFFormat format, boolean compress) throws IOException, RDFHandlerException {
+		this.start = System.currentTimeMillis();
+		this.file = new CountingOutputStream(out);
+		this.out = compress ? new GZIPOutputStream(file, BUFFER_SIZE) : new BufferedOutputStream(file, BUFFER_SIZE);
+		this.writer = Rio.createWriter(format, this.out);
+		writer.startRDF();
+	}
+
+	/**
+	 * @return the names of the formats there is a writer for
+	 */
+	public static String[] getFormatNames() {
+		List<String> names = new ArrayList<String>();
+		for (RDFFormat format : RDFWriterRegistry.getInstance().getKeys()) {
+			names.add(format.getName());
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * @return the format with the name, or null if there is no writer for it
+	 */
+	public static RDFFormat getFormat(String name) {
+		RDFFormat format = RDFFormat.valueOf(name);
+		if (format == null || !RDFWriterRegistry.getInstance().has(format)) {
+			return null;
+		}
+		return format;
+	}
+
+	public void startRDF() throws RDFHandlerException {
+
+	}
+
+	public void endRDF() throws RDFHandlerException {
+
+	}
+
+	public void handleNamespace(String prefix, String uri) throws RDFHandlerException {
+		writer.handleNamespace(prefix, uri);
+	}
+
+	public void handleStatement(Statement statement) throws RDFHandlerException {
+		writer.handleStatement(statement);
+		statements++;
+	}
+
+	public void handleComment(String comment) throws RDFHandlerException {
+		writer.handleComment(comment);
+	}
+
+	/**
+	 * Ends the document and closes the file.
+	 */
+	public void close() throws IOException, RDFHandlerException {
+		try {
+			writer.endRDF();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Closes the file of a dump that did not complete.
+	 */
+	public void abort() {
+		try {
+			out.close();
+		} catch (IOException ignore) {
+
+		}
+	}
+
+	public long getStatements() {
+		return statements;
+	}
+
+	/**
+	 * @return the number of bytes written to the file so far, after compression
+	 */
+	public long getBytes() {
+		return file.count;
+	}
+
+	/**
+	 * @return the milliseconds since the dump was opened
+	 */
+	public long getDuration() {
+		return System.currentTimeMillis() - start;
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+	}
+
+}
@@ -0,0 +1,312 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.ListBindingSet;
+
+/**
+ * Holds a query result in a local file, so the result can be received as fast as the server sends it
+ * and then be replayed as slowly as the steps downstream take it.
+ *
+ * Rows are written in a compact binary encoding: each row is its length followed by one tagged value
+ * per binding, with strings as UTF-8 and the datatypes and languages of literals as numbers into a
+ * table kept in memory. The file is read back through a window mapped into memory.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class ResultSpool implements TupleQueryResult {
+
+	private static final int WINDOW_BYTES = 64 * 1024 * 1024;
+
+	private static final byte UNBOUND = 0;
+	private static final byte IRI = 1;
+	private static final byte BLANK_NODE = 2;
+	private static final byte PLAIN_LITERAL = 3;
+	private static final byte LANGUAGE_LITERAL = 4;
+	private static final byte TYPED_LITERAL = 5;
+
+	private final File file;
+	private final ValueFactory valueFactory = ValueFactoryImpl.getInstance();
+	private final List<String> tags = new ArrayList<String>();
+	private final Map<String, Integer> tagIds = new HashMap<String, Integer>();
+	private List<String> bindingNames;
+	private long rows;
+	private long size;
+
+	private byte[] row = new byte[256];
+	private int rowLength;
+
+	private RandomAccessFile access;
+	private FileChannel channel;
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long position;
+	private long rowsRead;
+	private byte[] text = new byte[256];
+
+	/**
+	 * @param directory the directory to create the spool file in, or null for the default temporary directory
+	 */
+	public ResultSpool(File directory) throws IOException {
+		file = File.createTempFile("openrdf-spool", ".bin", directory);
+	}
+
+	/**
+	 * Receives the complete result into the spool file. The result itself is left for the caller to close.
+	 */
+	public void drain(TupleQueryResult result) throws QueryEvaluationException, IOException {
+		bindingNames = new ArrayList<String>(result.getBindingNames());
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+		try {
+			while (result.hasNext()) {
+				BindingSet bindingSet = result.next();
+				rowLength = 0;
+				for (int i = 0; i < bindingNames.size(); i++) {
+					encode(bindingSet.getValue(bindingNames.get(i)));
+				}
+				writeVarint(out, rowLength);
+				out.write(row, 0, rowLength);
+				rows++;
+			}
+		} finally {
+			out.close();
+		}
+		size = file.length();
+		access = new RandomAccessFile(file, "r");
+		channel = access.getChannel();
+	}
+
+	private void encode(Value value) throws IOException {
+		if (value == null) {
+			put(UNBOUND);
+		} else if (value instanceof URI) {
+			put(IRI);
+			putString(value.stringValue());
+		} else if (value instanceof BNode) {
+			put(BLANK_NODE);
+			putString(((BNode) value).getID());
+		} else {
+			Literal literal = (Literal) value;
+			if (literal.getLanguage() != null) {
+				put(LANGUAGE_LITERAL);
+				putVarint(tagId(literal.getLanguage()));
+			} else if (literal.getDatatype() != null) {
+				put(TYPED_LITERAL);
+				putVarint(tagId(literal.getDatatype().stringValue()));
+			} else {
+				put(PLAIN_LITERAL);
+			}
+			putString(literal.getLabel());
+		}
+	}
+
+	private int tagId(String tag) {
+		Integer id = tagIds.get(tag);
+		if (id == null) {
+			id = Integer.valueOf(tags.size());
+			tags.add(tag);
+			tagIds.put(tag, id);
+		}
+		return id.intValue();
+	}
+
+	private void put(byte b) {
+		ensureRowCapacity(1);
+		row[rowLength++] = b;
+	}
+
+	private void putVarint(int value) {
+		ensureRowCapacity(5);
+		while ((value & ~0x7F) != 0) {
+			row[rowLength++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		row[rowLength++] = (byte) value;
+	}
+
+	private void putString(String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8");
+		putVarint(bytes.length);
+		ensureRowCapacity(bytes.length);
+		System.arraycopy(bytes, 0, row, rowLength, bytes.length);
+		rowLength += bytes.length;
+	}
+
+	private void ensureRowCapacity(int bytes) {
+		if (rowLength + bytes > row.length) {
+			byte[] larger = new byte[Math.max(row.length * 2, rowLength + bytes)];
+			System.arraycopy(row, 0, larger, 0, rowLength);
+			row = larger;
+		}
+	}
+
+	private static void writeVarint(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	public List<String> getBindingNames() {
+		return bindingNames;
+	}
+
+	public boolean hasNext() {
+		return rowsRead < rows;
+	}
+
+	public BindingSet next() throws QueryEvaluationException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		try {
+			map((int) Math.min(5, size - position));
+			int length = getVarint();
+			position = windowStart + window.position();
+			map(length);
+			Value[] values = new Value[bindingNames.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = decode();
+			}
+			position += length;
+			rowsRead++;
+			return new ListBindingSet(bindingNames, values);
+		} catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	/**
+	 * Makes sure the window covers the next bytes from the current position.
+	 */
+	private void map(int bytes) throws IOException {
+		if (window == null || position + bytes > windowStart + window.limit()) {
+			windowStart = position;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Math.max(WINDOW_BYTES, bytes), size - position));
+		}
+		window.position((int) (position - windowStart));
+	}
+
+	private Value decode() throws IOException {
+		byte type = window.get();
+		switch (type) {
+		case UNBOUND:
+			return null;
+		case IRI:
+			return valueFactory.createURI(getString());
+		case BLANK_NODE:
+			return valueFactory.createBNode(getString());
+		case PLAIN_LITERAL:
+			return valueFactory.createLiteral(getString());
+		case LANGUAGE_LITERAL:
+			String language = tags.get(getVarint());
+			return valueFactory.createLiteral(getString(), language);
+		case TYPED_LITERAL:
+			URI datatype = valueFactory.createURI(tags.get(getVarint()));
+			return valueFactory.createLiteral(getString(), datatype);
+		default:
+			throw new IOException("Corrupt spool file " + file + ", unknown value type " + type);
+		}
+	}
+
+	private int getVarint() {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = window.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	private String getString() throws IOException {
+		int length = getVarint();
+		if (text.length < length) {
+			text = new byte[Math.max(text.length * 2, length)];
+		}
+		window.get(text, 0, length);
+		return new String(text, 0, length, "UTF-8");
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stops the replay and deletes the spool file.
+	 */
+	public void close() {
+		window = null;
+		channel = null;
+		if (access != null) {
+			try {
+				access.close();
+			} catch (IOException ignore) {
+
+			}
+			access = null;
+		}
+		// a mapped file can not be deleted on every platform, it is then deleted when the JVM exits
+		TempFiles.delete(file);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the number of rows received
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the size of the spool file in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+}
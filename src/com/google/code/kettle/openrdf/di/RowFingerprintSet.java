@@ -0,0 +1,176 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A set of 128 bit row fingerprints, used to remove duplicate rows while they stream past.
+ *
+ * Fingerprints are kept in an open addressing hash table outside the Java heap. The table starts
+ * in direct memory and moves to a memory mapped temporary file once it would outgrow the memory
+ * budget, so it keeps working, at the speed of the page cache, for result sets of any size.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class RowFingerprintSet {
+
+	private static final int SLOT_BYTES = 16;
+	private static final int SEGMENT_SHIFT = 26;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+	private static final long INITIAL_CAPACITY = 1L << 16;
+
+	private final long memoryBudget;
+
+	private ByteBuffer[] segments;
+	private long capacity;
+	private long size;
+	private File spillFile;
+	private RandomAccessFile spillAccess;
+
+	/**
+	 * @param memoryBudget the number of bytes the table may occupy in direct memory before it is moved to disk
+	 */
+	public RowFingerprintSet(long memoryBudget) throws IOException {
+		this.memoryBudget = memoryBudget;
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Adds the fingerprint to the set.
+	 *
+	 * @return true if the fingerprint was not yet in the set
+	 */
+	public boolean add(long high, long low) throws IOException {
+		if (high == 0 && low == 0) {
+			// zero marks an empty slot
+			low = 1;
+		}
+		if (!insert(high, low)) {
+			return false;
+		}
+		size++;
+		if (size * 2 > capacity) {
+			grow();
+		}
+		return true;
+	}
+
+	private boolean insert(long high, long low) {
+		long mask = capacity - 1;
+		long slot = low & mask;
+		while (true) {
+			ByteBuffer segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+			int offset = (int) (slot & SEGMENT_MASK) * SLOT_BYTES;
+			long slotHigh = segment.getLong(offset);
+			long slotLow = segment.getLong(offset + 8);
+			if (slotHigh == 0 && slotLow == 0) {
+				segment.putLong(offset, high);
+				segment.putLong(offset + 8, low);
+				return true;
+			}
+			if (slotHigh == high && slotLow == low) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void grow() throws IOException {
+		ByteBuffer[] oldSegments = segments;
+		long oldCapacity = capacity;
+		File oldSpillFile = spillFile;
+		RandomAccessFile oldSpillAccess = spillAccess;
+		allocate(oldCapacity * 2);
+		for (long slot = 0; slot < oldCapacity; slot++) {
+			ByteBuffer segment = oldSegments[(int) (slot >>> SEGMENT_SHIFT)];
+			int offset = (int) (slot & SEGMENT_MASK) * SLOT_BYTES;
+			long high = segment.getLong(offset);
+			long low = segment.getLong(offset + 8);
+			if (high != 0 || low != 0) {
+				insert(high, low);
+			}
+		}
+		release(oldSpillFile, oldSpillAccess);
+	}
+
+	private void allocate(long newCapacity) throws IOException {
+		long segmentSlots = Math.min(newCapacity, 1L << SEGMENT_SHIFT);
+		int segmentCount = (int) (newCapacity / segmentSlots);
+		int segmentBytes = (int) (segmentSlots * SLOT_BYTES);
+		ByteBuffer[] newSegments = new ByteBuffer[segmentCount];
+		if (newCapacity * SLOT_BYTES <= memoryBudget) {
+			for (int i = 0; i < segmentCount; i++) {
+				newSegments[i] = ByteBuffer.allocateDirect(segmentBytes);
+			}
+			spillFile = null;
+			spillAccess = null;
+		} else {
+			spillFile = File.createTempFile("openrdf-distinct", ".tmp");
+			spillAccess = new RandomAccessFile(spillFile, "rw");
+			// a sparse file reads back as zeros, which are empty slots
+			spillAccess.setLength(newCapacity * SLOT_BYTES);
+			FileChannel channel = spillAccess.getChannel();
+			for (int i = 0; i < segmentCount; i++) {
+				newSegments[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentBytes, segmentBytes);
+			}
+		}
+		segments = newSegments;
+		capacity = newCapacity;
+	}
+
+	private static void release(File file, RandomAccessFile access) {
+		if (access != null) {
+			try {
+				access.close();
+			} catch (IOException ignore) {
+
+			}
+		}
+		TempFiles.delete(file);
+	}
+
+	/**
+	 * @return the number of distinct fingerprints added
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the table has moved to a memory mapped file
+	 */
+	public boolean isSpilled() {
+		return spillFile != null;
+	}
+
+	/**
+	 * Releases the table and removes its spill file, if any.
+	 */
+	public void close() {
+		segments = null;
+		release(spillFile, spillAccess);
+		spillFile = null;
+		spillAccess = null;
+	}
+
+}
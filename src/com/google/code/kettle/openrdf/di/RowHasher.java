@@ -0,0 +1,116 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Value;
+
+/**
+ * Computes a 128 bit fingerprint of a row of RDF values, as two independent 64 bit hashes.
+ *
+ * Values are hashed by RDF term identity, the way SPARQL DISTINCT compares them, so
+ * "1" and "1"^^xsd:int give different fingerprints even though their string values are equal.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class RowHasher {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+	private long high;
+	private long low;
+
+	public RowHasher() {
+		reset();
+	}
+
+	public void reset() {
+		high = FNV_OFFSET;
+		low = GOLDEN;
+	}
+
+	public void add(Value value) {
+		if (value == null) {
+			addMarker(0);
+		} else if (value instanceof Literal) {
+			Literal literal = (Literal) value;
+			addMarker(3);
+			add(literal.getLabel());
+			if (literal.getLanguage() != null) {
+				addMarker(4);
+				add(literal.getLanguage());
+			} else if (literal.getDatatype() != null) {
+				addMarker(5);
+				add(literal.getDatatype().stringValue());
+			}
+		} else if (value instanceof BNode) {
+			addMarker(2);
+			add(value.stringValue());
+		} else {
+			addMarker(1);
+			add(value.stringValue());
+		}
+	}
+
+	public void add(String string) {
+		if (string == null) {
+			addMarker(0);
+			return;
+		}
+		int length = string.length();
+		for (int i = 0; i < length; i++) {
+			mix(string.charAt(i));
+		}
+		// The length terminates the string, so field boundaries cannot shift between rows
+		mix(length);
+		mix(length >>> 16);
+	}
+
+	private void addMarker(int marker) {
+		mix(0xffff0000 | marker);
+	}
+
+	private void mix(int c) {
+		high = (high ^ c) * FNV_PRIME;
+		low = Long.rotateLeft(low ^ (c * GOLDEN), 27) * 5 + 0x52dce729;
+	}
+
+	public long getHigh() {
+		return finalise(high);
+	}
+
+	public long getLow() {
+		return finalise(low ^ GOLDEN);
+	}
+
+	/**
+	 * The 64 bit finaliser of MurmurHash3, so every input bit affects every output bit.
+	 */
+	private static long finalise(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
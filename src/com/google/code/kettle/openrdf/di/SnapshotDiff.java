@@ -0,0 +1,596 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Compares the rows of a run with a snapshot of the previous successful run, so only inserted, changed
+ * and deleted rows need to be passed on.
+ *
+ * The snapshot file holds a record per row with a 128 bit hash of the key fields, a 64 bit hash of all
+ * fields and the position of the key values, sorted by key hash, followed by the key values themselves.
+ * The records are mapped into memory and searched by bisection, so the snapshot does not have to fit
+ * on the heap; only a bit per old row is kept, to find the rows that were deleted.
+ *
+ * A key may have several rows, for instance when a binding has several values. Its rows are matched on
+ * their content, so unchanged rows stay unchanged whatever their order. A deleted row then means one of
+ * the rows of the key went away, the key may still have others.
+ *
+ * The records of the new run are written as they come, then sorted in runs and merged into the new
+ * snapshot when the run is prepared, which replaces the old one only when the run is committed.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class SnapshotDiff {
+
+	public static final String NEW = "new";
+	public static final String CHANGED = "changed";
+	public static final String DELETED = "deleted";
+
+	private static final long MAGIC = 0x4F52444653534E50L;
+	private static final int HEADER_BYTES = 32;
+	private static final int RECORD_BYTES = 32;
+	private static final long SEGMENT_BYTES = 1L << 30;
+	private static final int RUN_RECORDS = 1 << 20;
+
+	private final File snapshotFile;
+	private final int[] keyPositions;
+	private final int width;
+	private final RowHasher hasher = new RowHasher();
+
+	// the snapshot of the previous run
+	private RandomAccessFile oldAccess;
+	private ByteBuffer[] oldSegments;
+	private long oldRecords;
+	private long oldKeysStart;
+	private long[] seen;
+	private long deletedCursor;
+
+	// the snapshot of this run
+	private final File recordsFile;
+	private final File keysFile;
+	private DataOutputStream records;
+	private DataOutputStream keys;
+	private final ByteArrayOutputStream keyEntry = new ByteArrayOutputStream();
+	private long keysSize;
+	private long newRecords;
+	private File newSnapshot;
+
+	private long inserted;
+	private long changed;
+	private long unchanged;
+	private long deleted;
+
+	/**
+	 * @param snapshotFile the snapshot of the previous run, which need not exist yet
+	 * @param keyPositions the positions of the key fields in a row
+	 * @param width the number of fields in a row that make up its content
+	 */
+	public SnapshotDiff(File snapshotFile, int[] keyPositions, int width) throws IOException {
+		this.snapshotFile = snapshotFile.getAbsoluteFile();
+		this.keyPositions = keyPositions;
+		this.width = width;
+		if (this.snapshotFile.exists()) {
+			openSnapshot();
+		}
+		// next to the snapshot, so it can be renamed into place
+		File directory = this.snapshotFile.getParentFile();
+		recordsFile = File.createTempFile("openrdf-snapshot", ".records", directory);
+		keysFile = File.createTempFile("openrdf-snapshot", ".keys", directory);
+		records = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(recordsFile), 65536));
+		keys = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(keysFile), 65536));
+	}
+
+	private void openSnapshot() throws IOException {
+		oldAccess = new RandomAccessFile(snapshotFile, "r");
+		if (oldAccess.length() < HEADER_BYTES || oldAccess.readLong() != MAGIC) {
+			throw new IOException("File " + snapshotFile + " is not a snapshot");
+		}
+		oldRecords = oldAccess.readLong();
+		if (oldAccess.readInt() != keyPositions.length) {
+			throw new IOException("Snapshot " + snapshotFile + " was taken with other key fields, delete it to start over");
+		}
+		FileChannel channel = oldAccess.getChannel();
+		long recordBytes = oldRecords * RECORD_BYTES;
+		oldSegments = new ByteBuffer[(int) ((recordBytes + SEGMENT_BYTES - 1) / SEGMENT_BYTES)];
+		for (int i = 0; i < oldSegments.length; i++) {
+			long start = i * SEGMENT_BYTES;
+			oldSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + start, Math.min(SEGMENT_BYTES, recordBytes - start));
+		}
+		oldKeysStart = HEADER_BYTES + recordBytes;
+		seen = new long[(int) ((oldRecords + 63) >>> 6)];
+	}
+
+	/**
+	 * Records the row in the new snapshot and compares it with the previous one.
+	 *
+	 * @return {@link #NEW} or {@link #CHANGED}, or null if the row is unchanged
+	 */
+	public String compare(Object[] row) throws IOException {
+		hasher.reset();
+		for (int i = 0; i < keyPositions.length; i++) {
+			hasher.add(toString(row[keyPositions[i]]));
+		}
+		long keyHigh = hasher.getHigh();
+		long keyLow = hasher.getLow();
+		hasher.reset();
+		for (int i = 0; i < width; i++) {
+			hasher.add(toString(row[i]));
+		}
+		long contentHash = hasher.getLow();
+
+		records.writeLong(keyHigh);
+		records.writeLong(keyLow);
+		records.writeLong(contentHash);
+		records.writeLong(keysSize);
+		writeKeys(row);
+		newRecords++;
+
+		long index = find(keyHigh, keyLow);
+		if (index < 0) {
+			inserted++;
+			return NEW;
+		}
+		// a key may have several rows, such as for a binding with several values: they are matched on
+		// their content first, and a row with no match left is a change to one of the unmatched rows
+		while (index > 0 && compare(getLong(index - 1, 0), getLong(index - 1, 1), keyHigh, keyLow) == 0) {
+			index--;
+		}
+		long unmatched = -1;
+		for (; index < oldRecords && compare(getLong(index, 0), getLong(index, 1), keyHigh, keyLow) == 0; index++) {
+			if (isSeen(index)) {
+				continue;
+			}
+			if (getLong(index, 2) == contentHash) {
+				setSeen(index);
+				unchanged++;
+				return null;
+			}
+			if (unmatched < 0) {
+				unmatched = index;
+			}
+		}
+		if (unmatched < 0) {
+			inserted++;
+			return NEW;
+		}
+		setSeen(unmatched);
+		changed++;
+		return CHANGED;
+	}
+
+	private boolean isSeen(long index) {
+		return (seen[(int) (index >>> 6)] & (1L << index)) != 0;
+	}
+
+	private void setSeen(long index) {
+		seen[(int) (index >>> 6)] |= 1L << index;
+	}
+
+	private static String toString(Object value) {
+		return value == null ? null : value.toString();
+	}
+
+	private void writeKeys(Object[] row) throws IOException {
+		keyEntry.reset();
+		for (int i = 0; i < keyPositions.length; i++) {
+			String key = toString(row[keyPositions[i]]);
+			if (key == null) {
+				writeVarint(keyEntry, 0);
+			} else {
+				byte[] bytes = key.getBytes("UTF-8");
+				writeVarint(keyEntry, bytes.length + 1);
+				keyEntry.write(bytes, 0, bytes.length);
+			}
+		}
+		keys.writeInt(keyEntry.size());
+		keyEntry.writeTo(keys);
+		keysSize += 4 + keyEntry.size();
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * @return the index of a record with the key hash in the previous snapshot, or -1
+	 */
+	private long find(long keyHigh, long keyLow) {
+		long low = 0;
+		long high = oldRecords - 1;
+		while (low <= high) {
+			long middle = (low + high) >>> 1;
+			int comparison = compare(getLong(middle, 0), getLong(middle, 1), keyHigh, keyLow);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	private long getLong(long record, int field) {
+		long position = record * RECORD_BYTES + field * 8;
+		return oldSegments[(int) (position / SEGMENT_BYTES)].getLong((int) (position % SEGMENT_BYTES));
+	}
+
+	private static int compare(long high1, long low1, long high2, long low2) {
+		if (high1 != high2) {
+			return high1 < high2 ? -1 : 1;
+		}
+		return low1 < low2 ? -1 : (low1 == low2 ? 0 : 1);
+	}
+
+	/**
+	 * Call after the last row of the run was compared.
+	 *
+	 * @return the key values of the next row of the previous snapshot that is not in this run, or null when there are no more
+	 */
+	public String[] nextDeleted() throws IOException {
+		while (deletedCursor < oldRecords) {
+			long index = deletedCursor++;
+			if (!isSeen(index)) {
+				deleted++;
+				return readKeys(getLong(index, 3));
+			}
+		}
+		return null;
+	}
+
+	private String[] readKeys(long offset) throws IOException {
+		FileChannel channel = oldAccess.getChannel();
+		ByteBuffer length = ByteBuffer.allocate(4);
+		readFully(channel, length, oldKeysStart + offset);
+		ByteBuffer entry = ByteBuffer.allocate(length.getInt(0));
+		readFully(channel, entry, oldKeysStart + offset + 4);
+		byte[] bytes = entry.array();
+		String[] values = new String[keyPositions.length];
+		int position = 0;
+		for (int i = 0; i < values.length; i++) {
+			int size = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[position++];
+				size |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			if (size > 0) {
+				values[i] = new String(bytes, position, size - 1, "UTF-8");
+				position += size - 1;
+			}
+		}
+		return values;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	/**
+	 * Sorts the records of this run into a new snapshot next to the previous one, which stays in place
+	 * until {@link #commit()}. Call after the last deleted row was read.
+	 */
+	public void prepare() throws IOException {
+		records.close();
+		keys.close();
+		List<File> runs = sortRuns();
+		boolean prepared = false;
+		newSnapshot = File.createTempFile("openrdf-snapshot", ".tmp", snapshotFile.getParentFile());
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newSnapshot), 65536));
+			try {
+				out.writeLong(MAGIC);
+				out.writeLong(newRecords);
+				out.writeInt(keyPositions.length);
+				out.write(new byte[HEADER_BYTES - 20]);
+				merge(runs, out);
+				InputStream in = new FileInputStream(keysFile);
+				try {
+					byte[] buffer = new byte[65536];
+					int read;
+					while ((read = in.read(buffer)) >= 0) {
+						out.write(buffer, 0, read);
+					}
+				} finally {
+					in.close();
+				}
+			} finally {
+				out.close();
+			}
+			closeSnapshot();
+			prepared = true;
+		} finally {
+			for (File run : runs) {
+				TempFiles.delete(run);
+			}
+			if (!prepared) {
+				TempFiles.delete(newSnapshot);
+				newSnapshot = null;
+			}
+			TempFiles.delete(recordsFile);
+			TempFiles.delete(keysFile);
+		}
+	}
+
+	/**
+	 * Puts the snapshot made by {@link #prepare()} in the place of the previous one.
+	 */
+	public void commit() throws IOException {
+		if (newSnapshot == null) {
+			throw new IllegalStateException("The snapshot of this run was not prepared");
+		}
+		try {
+			if (!newSnapshot.renameTo(snapshotFile)) {
+				// renaming over an existing file fails on some platforms
+				snapshotFile.delete();
+				if (!newSnapshot.renameTo(snapshotFile)) {
+					throw new IOException("Unable to replace snapshot " + snapshotFile + " with " + newSnapshot);
+				}
+			}
+		} finally {
+			TempFiles.delete(newSnapshot);
+			newSnapshot = null;
+		}
+	}
+
+	/**
+	 * Leaves the previous snapshot as it is and removes the records of this run, prepared or not.
+	 */
+	public void abort() {
+		try {
+			records.close();
+			keys.close();
+		} catch (IOException ignore) {
+
+		}
+		closeSnapshot();
+		TempFiles.delete(recordsFile);
+		TempFiles.delete(keysFile);
+		if (newSnapshot != null) {
+			TempFiles.delete(newSnapshot);
+			newSnapshot = null;
+		}
+	}
+
+	/**
+	 * @return the file holding the snapshot of the previous run, and after a commit that of this run
+	 */
+	public File getSnapshotFile() {
+		return snapshotFile;
+	}
+
+	private void closeSnapshot() {
+		oldSegments = null;
+		if (oldAccess != null) {
+			try {
+				oldAccess.close();
+			} catch (IOException ignore) {
+
+			}
+			oldAccess = null;
+		}
+	}
+
+	/**
+	 * Sorts the records of this run by key hash, in runs that fit in memory.
+	 */
+	private List<File> sortRuns() throws IOException {
+		List<File> runs = new ArrayList<File>();
+		boolean sorted = false;
+		long[] run = new long[(int) Math.min(RUN_RECORDS, Math.max(1, newRecords)) * 4];
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(recordsFile), 65536));
+		try {
+			long remaining = newRecords;
+			while (remaining > 0) {
+				int count = (int) Math.min(RUN_RECORDS, remaining);
+				for (int i = 0; i < count * 4; i++) {
+					run[i] = in.readLong();
+				}
+				sort(run, 0, count - 1);
+				File runFile = File.createTempFile("openrdf-snapshot", ".run", snapshotFile.getParentFile());
+				runs.add(runFile);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), 65536));
+				try {
+					for (int i = 0; i < count * 4; i++) {
+						out.writeLong(run[i]);
+					}
+				} finally {
+					out.close();
+				}
+				remaining -= count;
+			}
+			sorted = true;
+		} finally {
+			in.close();
+			if (!sorted) {
+				for (File runFile : runs) {
+					TempFiles.delete(runFile);
+				}
+			}
+		}
+		return runs;
+	}
+
+	private static void sort(long[] run, int low, int high) {
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			long pivotHigh = run[middle * 4];
+			long pivotLow = run[middle * 4 + 1];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (compare(run[i * 4], run[i * 4 + 1], pivotHigh, pivotLow) < 0) {
+					i++;
+				}
+				while (compare(run[j * 4], run[j * 4 + 1], pivotHigh, pivotLow) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					for (int k = 0; k < 4; k++) {
+						long swap = run[i * 4 + k];
+						run[i * 4 + k] = run[j * 4 + k];
+						run[j * 4 + k] = swap;
+					}
+					i++;
+					j--;
+				}
+			}
+			// recurse into the smaller part only, so the stack stays shallow
+			if (j - low < high - i) {
+				sort(run, low, j);
+				low = i;
+			} else {
+				sort(run, i, high);
+				high = j;
+			}
+		}
+	}
+
+	private static void merge(List<File> runs, DataOutputStream out) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math.max(1, runs.size()), new Comparator<RunReader>() {
+			public int compare(RunReader a, RunReader b) {
+				return SnapshotDiff.compare(a.record[0], a.record[1], b.record[0], b.record[1]);
+			}
+		});
+		List<RunReader> readers = new ArrayList<RunReader>();
+		try {
+			for (File run : runs) {
+				RunReader reader = new RunReader(run);
+				readers.add(reader);
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				for (int i = 0; i < 4; i++) {
+					out.writeLong(reader.record[i]);
+				}
+				if (reader.next()) {
+					queue.add(reader);
+				}
+			}
+		} finally {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads the records of a sorted run one at a time.
+	 */
+	private static class RunReader {
+
+		private final DataInputStream in;
+		private final long[] record = new long[4];
+
+		public RunReader(File run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 65536));
+		}
+
+		public boolean next() throws IOException {
+			try {
+				record[0] = in.readLong();
+			} catch (EOFException e) {
+				return false;
+			}
+			for (int i = 1; i < 4; i++) {
+				record[i] = in.readLong();
+			}
+			return true;
+		}
+
+		public void close() {
+			try {
+				in.close();
+			} catch (IOException ignore) {
+
+			}
+		}
+
+	}
+
+	/**
+	 * @return the positions of the key fields in a row
+	 */
+	public int[] getKeyPositions() {
+		return keyPositions;
+	}
+
+	/**
+	 * @return the number of fields in a row that make up its content, which is also the position of the change flag
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	public long getInserted() {
+		return inserted;
+	}
+
+	public long getChanged() {
+		return changed;
+	}
+
+	public long getUnchanged() {
+		return unchanged;
+	}
+
+	public long getDeleted() {
+		return deleted;
+	}
+
+	/**
+	 * @return the number of rows in the previous snapshot
+	 */
+	public long getPreviousRows() {
+		return oldRecords;
+	}
+
+}
@@ -0,0 +1,316 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small lexical helpers for rewriting the SPARQL entered in the step before it is sent to the repository.
+ *
+ * The query is not parsed. It is scanned while skipping string literals, IRI references and comments,
+ * which is enough to locate the outer WHERE group reliably.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+public class SparqlRewriter {
+
+	private SparqlRewriter() {
+
+	}
+
+	/**
+	 * Adds a FILTER constraint to the outer WHERE group of a SELECT query.
+	 *
+	 * @param sparql the query to rewrite
+	 * @param constraint the filter expression, without the FILTER keyword
+	 * @return the rewritten query
+	 * @throws IllegalArgumentException if the query has no WHERE group
+	 */
+	public static String addFilter(String sparql, String constraint) {
+		int end = findWhereGroupEnd(sparql);
+		if (end < 0) {
+			throw new IllegalArgumentException("Unable to find the WHERE clause of the SPARQL query");
+		}
+		return sparql.substring(0, end) + "\n  FILTER (" + constraint + ")\n" + sparql.substring(end);
+	}
+
+	/**
+	 * Tells whether a variable is bound by an expression in the projection of the outer SELECT, as in
+	 * <code>(MAX(?m) AS ?modified)</code>. Such a variable is unbound inside the WHERE clause.
+	 */
+	public static boolean isProjectedExpression(String sparql, String variable) {
+		int select = indexOfKeyword(sparql, "SELECT", 0);
+		if (select < 0) {
+			return false;
+		}
+		int where = indexOfKeyword(sparql, "WHERE", select + 6);
+		int group = findWhereGroupStart(sparql);
+		int end = where < 0 ? group : (group < 0 ? where : Math.min(where, group));
+		if (end < 0) {
+			end = sparql.length();
+		}
+		int as = indexOfKeyword(sparql, "AS", select + 6);
+		while (as >= 0 && as < end) {
+			int i = as + 2;
+			while (i < end && Character.isWhitespace(sparql.charAt(i))) {
+				i++;
+			}
+			if (i < end && (sparql.charAt(i) == '?' || sparql.charAt(i) == '$')) {
+				int start = i + 1;
+				i = start;
+				while (i < end && isNameChar(sparql.charAt(i))) {
+					i++;
+				}
+				if (sparql.substring(start, i).equals(variable)) {
+					return true;
+				}
+			}
+			as = indexOfKeyword(sparql, "AS", as + 2);
+		}
+		return false;
+	}
+
+	/**
+	 * Tells whether the outer SELECT of a query is DISTINCT. That of sub-selects does not count.
+	 */
+	public static boolean isDistinct(String sparql) {
+		return findDistinct(sparql) >= 0;
+	}
+
+	/**
+	 * Removes the DISTINCT modifier from the outer SELECT of a query, leaving sub-selects alone.
+	 *
+	 * @param sparql the query to rewrite
+	 * @return the rewritten query, or the query as it is if the outer SELECT is not DISTINCT
+	 */
+	public static String removeDistinct(String sparql) {
+		int distinct = findDistinct(sparql);
+		if (distinct < 0) {
+			return sparql;
+		}
+		return sparql.substring(0, distinct) + sparql.substring(distinct + 8);
+	}
+
+	/**
+	 * @return the position of the DISTINCT modifier of the outer SELECT, or -1 if there is none
+	 */
+	private static int findDistinct(String sparql) {
+		int select = indexOfKeyword(sparql, "SELECT", 0);
+		if (select < 0) {
+			return -1;
+		}
+		int distinct = indexOfKeyword(sparql, "DISTINCT", select + 6);
+		if (distinct < 0 || sparql.substring(select + 6, distinct).trim().length() > 0) {
+			return -1;
+		}
+		return distinct;
+	}
+
+	/**
+	 * Tells whether the outer query has a LIMIT or OFFSET, which apply after DISTINCT.
+	 * Those of sub-selects inside the WHERE clause do not count.
+	 */
+	public static boolean hasSlice(String sparql) {
+		int end = findWhereGroupEnd(sparql);
+		if (end < 0) {
+			return false;
+		}
+		return indexOfKeyword(sparql, "LIMIT", end) >= 0 || indexOfKeyword(sparql, "OFFSET", end) >= 0;
+	}
+
+	/**
+	 * Tells whether the string is an absolute IRI that can be written between angle brackets in a query,
+	 * without characters that would end the IRI reference or change the query.
+	 */
+	public static boolean isIri(String iri) {
+		if (iri.indexOf(':') <= 0) {
+			return false;
+		}
+		for (int i = 0; i < iri.length(); i++) {
+			char c = iri.charAt(i);
+			if (c <= ' ' || "<>\"{}|^`\\".indexOf(c) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the PREFIX declarations of a query.
+	 *
+	 * @return the namespace IRI of each declared prefix, in the order declared
+	 */
+	public static Map<String, String> getPrefixes(String sparql) {
+		Map<String, String> prefixes = new LinkedHashMap<String, String>();
+		int length = sparql.length();
+		int i = indexOfKeyword(sparql, "PREFIX", 0);
+		while (i >= 0) {
+			int colon = sparql.indexOf(':', i + 6);
+			int open = colon < 0 ? -1 : sparql.indexOf('<', colon);
+			int close = open < 0 ? -1 : sparql.indexOf('>', open);
+			if (close < 0) {
+				break;
+			}
+			String prefix = sparql.substring(i + 6, colon).trim();
+			if (sparql.substring(colon + 1, open).trim().length() == 0) {
+				prefixes.put(prefix, sparql.substring(open + 1, close));
+			}
+			i = close + 1 < length ? indexOfKeyword(sparql, "PREFIX", close + 1) : -1;
+		}
+		return prefixes;
+	}
+
+	/**
+	 * Returns the position of the opening brace of the first top level group, or -1 if there is none.
+	 */
+	static int findWhereGroupStart(String sparql) {
+		int i = 0;
+		int length = sparql.length();
+		while (i < length) {
+			char c = sparql.charAt(i);
+			if (c == '#') {
+				i = skipComment(sparql, i);
+			} else if (c == '"' || c == '\'') {
+				i = skipString(sparql, i);
+			} else if (c == '<') {
+				i = skipIRI(sparql, i);
+			} else if (c == '{') {
+				return i;
+			} else {
+				i++;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position of the closing brace of the first top level group, which for
+	 * SELECT queries is the WHERE clause. Trailing VALUES blocks are not mistaken for it.
+	 */
+	static int findWhereGroupEnd(String sparql) {
+		int depth = 0;
+		int i = 0;
+		int length = sparql.length();
+		while (i < length) {
+			char c = sparql.charAt(i);
+			if (c == '#') {
+				i = skipComment(sparql, i);
+			} else if (c == '"' || c == '\'') {
+				i = skipString(sparql, i);
+			} else if (c == '<') {
+				i = skipIRI(sparql, i);
+			} else {
+				if (c == '{') {
+					depth++;
+				} else if (c == '}') {
+					depth--;
+					if (depth == 0) {
+						return i;
+					}
+				}
+				i++;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position of the next occurrence of the keyword outside literals, IRIs and comments,
+	 * or -1 if it does not occur. Keywords are matched case insensitively as whole words.
+	 */
+	static int indexOfKeyword(String sparql, String keyword, int from) {
+		int i = from;
+		int length = sparql.length();
+		while (i < length) {
+			char c = sparql.charAt(i);
+			if (c == '#') {
+				i = skipComment(sparql, i);
+			} else if (c == '"' || c == '\'') {
+				i = skipString(sparql, i);
+			} else if (c == '<') {
+				i = skipIRI(sparql, i);
+			} else if (Character.isLetter(c)) {
+				int start = i;
+				while (i < length && isNameChar(sparql.charAt(i))) {
+					i++;
+				}
+				// variables and prefixed names are not keywords
+				char previous = start > 0 ? sparql.charAt(start - 1) : ' ';
+				boolean name = previous == '?' || previous == '$' || previous == ':';
+				if (!name && i - start == keyword.length() && sparql.regionMatches(true, start, keyword, 0, keyword.length())) {
+					return start;
+				}
+			} else {
+				i++;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isNameChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == ':';
+	}
+
+	private static int skipComment(String sparql, int i) {
+		int end = sparql.indexOf('\n', i);
+		return end < 0 ? sparql.length() : end + 1;
+	}
+
+	private static int skipString(String sparql, int i) {
+		char quote = sparql.charAt(i);
+		int length = sparql.length();
+		boolean longString = i + 2 < length && sparql.charAt(i + 1) == quote && sparql.charAt(i + 2) == quote;
+		int j = longString ? i + 3 : i + 1;
+		while (j < length) {
+			char c = sparql.charAt(j);
+			if (c == '\\') {
+				j += 2;
+			} else if (c == quote) {
+				if (!longString) {
+					return j + 1;
+				}
+				if (j + 2 < length && sparql.charAt(j + 1) == quote && sparql.charAt(j + 2) == quote) {
+					return j + 3;
+				}
+				j++;
+			} else {
+				j++;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * IRI references cannot contain white space, which distinguishes them from the less-than operator.
+	 */
+	private static int skipIRI(String sparql, int i) {
+		int length = sparql.length();
+		for (int j = i + 1; j < length; j++) {
+			char c = sparql.charAt(j);
+			if (c == '>') {
+				return j + 1;
+			}
+			if (Character.isWhitespace(c) || c == '<' || c == '"' || c == '{' || c == '}') {
+				break;
+			}
+		}
+		return i + 1;
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import java.io.File;
+
+/**
+ * Removes the temporary files of a step as soon as it is done with them.
+ *
+ * Files are not registered with {@link File#deleteOnExit()} up front, as that list only grows for the
+ * life of the JVM, which on a server runs many transformations. Only a file that can not be deleted yet,
+ * such as a file still mapped into memory on some platforms, is left for the JVM to delete on exit.
+ *
+ * @author Andre Oosthuizen
+ *
+ */
+final class TempFiles {
+
+	private TempFiles() {
+
+	}
+
+	/**
+	 * Deletes the file, or has it deleted when the JVM exits if that fails.
+	 */
+	static void delete(File file) {
+		if (file != null && !file.delete() && file.exists()) {
+			file.deleteOnExit();
+		}
+	}
+
+}
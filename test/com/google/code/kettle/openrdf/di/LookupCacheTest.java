@@ -0,0 +1,81 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Andre Oosthuizen
+ *
+ */
+public class LookupCacheTest {
+
+	@Test
+	public void keysMissingFromAPreloadedMapAreMisses() {
+		LookupCache cache = new LookupCache(10);
+		cache.startPreload(1);
+		assertTrue(cache.preload("a", new String[] { "1" }));
+		cache.finishPreload();
+		assertArrayEquals(new String[] { "1" }, cache.get("a"));
+		assertSame(LookupCache.NOT_FOUND, cache.get("b"));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void aPreloadBeyondTheMaximumIsAbandoned() {
+		LookupCache cache = new LookupCache(1);
+		cache.startPreload(1);
+		assertTrue(cache.preload("a", new String[] { "1" }));
+		assertFalse(cache.preload("b", new String[] { "2" }));
+		assertFalse(cache.isPreloaded());
+		assertNull(cache.get("a"));
+	}
+
+	@Test
+	public void anAbandonedPreloadLeavesKeysToBeLookedUp() {
+		LookupCache cache = new LookupCache(10);
+		cache.startPreload(1);
+		cache.preload("a", new String[] { "1" });
+		cache.abandonPreload();
+		assertFalse(cache.isPreloaded());
+		assertNull(cache.get("b"));
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void recentKeysAreKeptUpToTheMaximum() {
+		LookupCache cache = new LookupCache(2);
+		cache.put("a", new String[] { "1" });
+		cache.put("b", LookupCache.NOT_FOUND);
+		assertSame(LookupCache.NOT_FOUND, cache.get("b"));
+		cache.get("a");
+		cache.put("c", new String[] { "3" });
+		assertNull(cache.get("b"));
+		assertArrayEquals(new String[] { "1" }, cache.get("a"));
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.impl.ListBindingSet;
+import org.openrdf.query.impl.MutableTupleQueryResult;
+
+/**
+ * @author Andre Oosthuizen
+ *
+ */
+public class ResultSpoolTest {
+
+	private final ValueFactory valueFactory = ValueFactoryImpl.getInstance();
+
+	@Test
+	public void everyKindOfValueIsReplayed() throws Exception {
+		List<String> names = Arrays.asList("s", "o");
+		List<BindingSet> rows = new ArrayList<BindingSet>();
+		rows.add(new ListBindingSet(names, valueFactory.createURI("http://example.org/a"), valueFactory.createLiteral("plain")));
+		rows.add(new ListBindingSet(names, valueFactory.createBNode("b1"), valueFactory.createLiteral("chat", "fr")));
+		rows.add(new ListBindingSet(names, valueFactory.createURI("http://example.org/b"), valueFactory.createLiteral("42", XMLSchema.INTEGER)));
+		rows.add(new ListBindingSet(names, valueFactory.createURI("http://example.org/c"), (Value) null));
+		rows.add(new ListBindingSet(names, valueFactory.createURI("http://example.org/d"), valueFactory.createLiteral("\u00e9t\u00e9 \u2603")));
+		ResultSpool spool = new ResultSpool(null);
+		try {
+			spool.drain(new MutableTupleQueryResult(names, rows));
+			assertEquals(rows.size(), spool.getRows());
+			assertTrue(spool.getSize() > 0);
+			assertEquals(names, spool.getBindingNames());
+			for (BindingSet expected : rows) {
+				assertTrue(spool.hasNext());
+				BindingSet actual = spool.next();
+				for (String name : names) {
+					assertEquals(expected.getValue(name), actual.getValue(name));
+				}
+			}
+			assertFalse(spool.hasNext());
+		} finally {
+			spool.close();
+		}
+	}
+
+	@Test
+	public void anEmptyResultIsReplayed() throws Exception {
+		List<String> names = Arrays.asList("s");
+		ResultSpool spool = new ResultSpool(null);
+		try {
+			spool.drain(new MutableTupleQueryResult(names, new ArrayList<BindingSet>()));
+			assertEquals(0, spool.getRows());
+			assertFalse(spool.hasNext());
+		} finally {
+			spool.close();
+		}
+	}
+
+	@Test
+	public void closeDeletesTheFile() throws Exception {
+		List<String> names = Arrays.asList("s");
+		List<BindingSet> rows = new ArrayList<BindingSet>();
+		rows.add(new ListBindingSet(names, valueFactory.createURI("http://example.org/a")));
+		ResultSpool spool = new ResultSpool(null);
+		spool.drain(new MutableTupleQueryResult(names, rows));
+		assertTrue(spool.getFile().exists());
+		spool.next();
+		spool.close();
+		assertFalse(spool.getFile().exists());
+	}
+
+	@Test
+	public void unboundValuesStayUnbound() throws Exception {
+		List<String> names = Arrays.asList("s", "o");
+		List<BindingSet> rows = new ArrayList<BindingSet>();
+		rows.add(new ListBindingSet(names, (Value) null, (Value) null));
+		ResultSpool spool = new ResultSpool(null);
+		try {
+			spool.drain(new MutableTupleQueryResult(names, rows));
+			BindingSet row = spool.next();
+			assertNull(row.getValue("s"));
+			assertNull(row.getValue("o"));
+		} finally {
+			spool.close();
+		}
+	}
+
+}
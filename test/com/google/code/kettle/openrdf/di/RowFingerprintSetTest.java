@@ -0,0 +1,111 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+/**
+ * @author Andre Oosthuizen
+ *
+ */
+public class RowFingerprintSetTest {
+
+	@Test
+	public void duplicatesAreRejected() throws IOException {
+		RowFingerprintSet set = new RowFingerprintSet(1 << 20);
+		try {
+			assertTrue(set.add(1, 2));
+			assertTrue(set.add(2, 1));
+			assertFalse(set.add(1, 2));
+			assertEquals(2, set.size());
+		} finally {
+			set.close();
+		}
+	}
+
+	@Test
+	public void theZeroFingerprintIsNotAnEmptySlot() throws IOException {
+		RowFingerprintSet set = new RowFingerprintSet(1 << 20);
+		try {
+			assertTrue(set.add(0, 0));
+			assertFalse(set.add(0, 0));
+			assertEquals(1, set.size());
+		} finally {
+			set.close();
+		}
+	}
+
+	@Test
+	public void everyFingerprintSurvivesGrowing() throws IOException {
+		RowFingerprintSet set = new RowFingerprintSet(64L << 20);
+		try {
+			addAll(set, 500000);
+			assertFalse(set.isSpilled());
+		} finally {
+			set.close();
+		}
+	}
+
+	@Test
+	public void theTableSpillsToDiskBeyondTheBudget() throws IOException {
+		RowFingerprintSet set = new RowFingerprintSet(1 << 20);
+		try {
+			addAll(set, 200000);
+			assertTrue(set.isSpilled());
+		} finally {
+			set.close();
+		}
+	}
+
+	@Test
+	public void rowsWithEqualStringsButOtherTermsDiffer() throws IOException {
+		ValueFactory valueFactory = new ValueFactoryImpl();
+		RowHasher hasher = new RowHasher();
+		RowFingerprintSet set = new RowFingerprintSet(1 << 20);
+		try {
+			hasher.add(valueFactory.createLiteral("1"));
+			assertTrue(set.add(hasher.getHigh(), hasher.getLow()));
+			hasher.reset();
+			hasher.add(valueFactory.createLiteral(1));
+			assertTrue(set.add(hasher.getHigh(), hasher.getLow()));
+			hasher.reset();
+			hasher.add(valueFactory.createLiteral("1"));
+			assertFalse(set.add(hasher.getHigh(), hasher.getLow()));
+		} finally {
+			set.close();
+		}
+	}
+
+	private static void addAll(RowFingerprintSet set, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			assertTrue(set.add(i * 0x9e3779b97f4a7c15L, i));
+		}
+		for (int i = 0; i < count; i++) {
+			assertFalse(set.add(i * 0x9e3779b97f4a7c15L, i));
+		}
+		assertEquals(count, set.size());
+	}
+
+}
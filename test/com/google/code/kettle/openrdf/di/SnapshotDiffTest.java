@@ -0,0 +1,194 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Andre Oosthuizen
+ *
+ */
+public class SnapshotDiffTest {
+
+	private static final int[] KEYS = new int[] { 0 };
+
+	private File directory;
+	private File snapshotFile;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("openrdf-snapshot-test", "");
+		directory.delete();
+		directory.mkdir();
+		snapshotFile = new File(directory, "snapshot.bin");
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private SnapshotDiff open() throws IOException {
+		return new SnapshotDiff(snapshotFile, KEYS, 2);
+	}
+
+	private static Object[] row(String key, String value) {
+		return new Object[] { key, value, null };
+	}
+
+	private void takeFirstSnapshot() throws IOException {
+		SnapshotDiff diff = open();
+		assertEquals(0, diff.getPreviousRows());
+		assertEquals(SnapshotDiff.NEW, diff.compare(row("a", "1")));
+		assertEquals(SnapshotDiff.NEW, diff.compare(row("b", "2")));
+		assertEquals(SnapshotDiff.NEW, diff.compare(row("c", "3")));
+		assertNull(diff.nextDeleted());
+		diff.prepare();
+		diff.commit();
+	}
+
+	@Test
+	public void newChangedAndDeletedRowsAreFound() throws IOException {
+		takeFirstSnapshot();
+		SnapshotDiff diff = open();
+		assertEquals(3, diff.getPreviousRows());
+		assertNull(diff.compare(row("a", "1")));
+		assertEquals(SnapshotDiff.CHANGED, diff.compare(row("b", "20")));
+		assertEquals(SnapshotDiff.NEW, diff.compare(row("d", "4")));
+		assertArrayEquals(new String[] { "c" }, diff.nextDeleted());
+		assertNull(diff.nextDeleted());
+		assertEquals(1, diff.getInserted());
+		assertEquals(1, diff.getChanged());
+		assertEquals(1, diff.getUnchanged());
+		assertEquals(1, diff.getDeleted());
+		diff.prepare();
+		diff.commit();
+
+		diff = open();
+		assertEquals(3, diff.getPreviousRows());
+		assertNull(diff.compare(row("b", "20")));
+		assertNull(diff.compare(row("d", "4")));
+		assertArrayEquals(new String[] { "a" }, diff.nextDeleted());
+		diff.abort();
+	}
+
+	@Test
+	public void aPreparedSnapshotOnlyReplacesThePreviousOneOnCommit() throws IOException {
+		takeFirstSnapshot();
+		SnapshotDiff diff = open();
+		assertEquals(SnapshotDiff.NEW, diff.compare(row("x", "9")));
+		diff.nextDeleted();
+		diff.prepare();
+		diff.abort();
+
+		diff = open();
+		assertEquals(3, diff.getPreviousRows());
+		assertNull(diff.compare(row("a", "1")));
+		diff.abort();
+		assertEquals(1, directory.listFiles().length);
+	}
+
+	@Test
+	public void abortLeavesThePreviousSnapshot() throws IOException {
+		takeFirstSnapshot();
+		long length = snapshotFile.length();
+		SnapshotDiff diff = open();
+		diff.compare(row("a", "10"));
+		diff.abort();
+		assertTrue(snapshotFile.exists());
+		assertEquals(length, snapshotFile.length());
+		assertEquals(1, directory.listFiles().length);
+	}
+
+	@Test
+	public void rowsSharingAKeyAreMatchedOnTheirContent() throws IOException {
+		SnapshotDiff diff = open();
+		diff.compare(row("s1", "labelA"));
+		diff.compare(row("s1", "labelB"));
+		diff.prepare();
+		diff.commit();
+		for (int run = 0; run < 2; run++) {
+			diff = open();
+			assertNull(diff.compare(row("s1", "labelB")));
+			assertNull(diff.compare(row("s1", "labelA")));
+			assertNull(diff.nextDeleted());
+			assertEquals(2, diff.getUnchanged());
+			diff.prepare();
+			diff.commit();
+		}
+
+		diff = open();
+		assertNull(diff.compare(row("s1", "labelA")));
+		assertEquals(SnapshotDiff.CHANGED, diff.compare(row("s1", "labelC")));
+		assertEquals(SnapshotDiff.NEW, diff.compare(row("s1", "labelD")));
+		assertNull(diff.nextDeleted());
+		diff.prepare();
+		diff.commit();
+
+		diff = open();
+		assertNull(diff.compare(row("s1", "labelD")));
+		assertArrayEquals(new String[] { "s1" }, diff.nextDeleted());
+		assertArrayEquals(new String[] { "s1" }, diff.nextDeleted());
+		assertNull(diff.nextDeleted());
+		diff.abort();
+	}
+
+	@Test
+	public void unboundKeysAreKept() throws IOException {
+		SnapshotDiff diff = open();
+		diff.compare(row(null, "1"));
+		diff.prepare();
+		diff.commit();
+		diff = open();
+		String[] deleted = diff.nextDeleted();
+		assertEquals(1, deleted.length);
+		assertNull(deleted[0]);
+		assertNull(diff.nextDeleted());
+		diff.abort();
+	}
+
+	@Test
+	public void aRunWithoutRowsEmptiesTheSnapshot() throws IOException {
+		takeFirstSnapshot();
+		SnapshotDiff diff = open();
+		int deleted = 0;
+		while (diff.nextDeleted() != null) {
+			deleted++;
+		}
+		assertEquals(3, deleted);
+		diff.prepare();
+		diff.commit();
+		diff = open();
+		assertEquals(0, diff.getPreviousRows());
+		assertNull(diff.nextDeleted());
+		diff.abort();
+	}
+
+}
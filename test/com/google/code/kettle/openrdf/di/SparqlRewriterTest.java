@@ -0,0 +1,114 @@
+/*
+ *   This software is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This software is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   Copyright 2013 Andre Oosthuizen (South Africa)
+ */
+package com.google.code.kettle.openrdf.di;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author Andre Oosthuizen
+ *
+ */
+public class SparqlRewriterTest {
+
+	@Test
+	public void addFilterGoesInsideTheOuterWhereGroup() {
+		String sparql = "SELECT ?s WHERE { ?s <http://ex.org/p> ?m } ORDER BY ?s";
+		assertEquals("SELECT ?s WHERE { ?s <http://ex.org/p> ?m \n  FILTER (?m > 5)\n} ORDER BY ?s", SparqlRewriter.addFilter(sparql, "?m > 5"));
+	}
+
+	@Test
+	public void addFilterSkipsBracesInLiteralsIrisAndComments() {
+		String sparql = "SELECT ?s WHERE {\n # a } in a comment\n ?s ?p \"}\" . ?s ?q '''{''' . { ?s ?r ?o } }";
+		String rewritten = SparqlRewriter.addFilter(sparql, "true");
+		assertTrue(rewritten.endsWith("{ ?s ?r ?o } \n  FILTER (true)\n}"));
+	}
+
+	@Test
+	public void addFilterIgnoresTrailingValues() {
+		String sparql = "SELECT ?s WHERE { ?s ?p ?o } VALUES ?o { 1 2 }";
+		assertEquals("SELECT ?s WHERE { ?s ?p ?o \n  FILTER (true)\n} VALUES ?o { 1 2 }", SparqlRewriter.addFilter(sparql, "true"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void addFilterNeedsAWhereGroup() {
+		SparqlRewriter.addFilter("SELECT ?s", "true");
+	}
+
+	@Test
+	public void removeDistinctOnlyTouchesTheOuterSelect() {
+		assertEquals("SELECT  ?s WHERE { ?s ?p ?o }", SparqlRewriter.removeDistinct("SELECT DISTINCT ?s WHERE { ?s ?p ?o }"));
+		assertEquals("select  ?s { ?s ?p ?o }", SparqlRewriter.removeDistinct("select distinct ?s { ?s ?p ?o }"));
+		String nested = "SELECT ?s WHERE { { SELECT DISTINCT ?s WHERE { ?s ?p ?o } } }";
+		assertFalse(SparqlRewriter.isDistinct(nested));
+		assertEquals(nested, SparqlRewriter.removeDistinct(nested));
+		String reduced = "SELECT REDUCED ?s WHERE { ?s ?p ?o }";
+		assertFalse(SparqlRewriter.isDistinct(reduced));
+		assertEquals(reduced, SparqlRewriter.removeDistinct(reduced));
+		assertTrue(SparqlRewriter.isDistinct("SELECT DISTINCT ?s WHERE { ?s ?p ?o }"));
+	}
+
+	@Test
+	public void removeDistinctIgnoresVariablesAndPrefixedNames() {
+		String sparql = "SELECT ?distinct ex:distinct WHERE { ?s ?p ?distinct }";
+		assertFalse(SparqlRewriter.isDistinct(sparql));
+		assertEquals(sparql, SparqlRewriter.removeDistinct(sparql));
+	}
+
+	@Test
+	public void hasSliceLooksAtTheOuterQueryOnly() {
+		assertTrue(SparqlRewriter.hasSlice("SELECT DISTINCT ?s WHERE { ?s ?p ?o } LIMIT 10"));
+		assertTrue(SparqlRewriter.hasSlice("SELECT DISTINCT ?s WHERE { ?s ?p ?o } ORDER BY ?s offset 5"));
+		assertFalse(SparqlRewriter.hasSlice("SELECT DISTINCT ?s WHERE { { SELECT ?s WHERE { ?s ?p ?o } LIMIT 10 } }"));
+		assertFalse(SparqlRewriter.hasSlice("SELECT DISTINCT ?s WHERE { ?s ?p \"LIMIT 10\" }"));
+	}
+
+	@Test
+	public void isProjectedExpressionFindsAliasesOfTheOuterSelect() {
+		assertTrue(SparqlRewriter.isProjectedExpression("SELECT ?s (MAX(?m) AS ?modified) WHERE { ?s ?p ?m } GROUP BY ?s", "modified"));
+		assertTrue(SparqlRewriter.isProjectedExpression("select ?s (max(?m) as $modified) { ?s ?p ?m } group by ?s", "modified"));
+		assertFalse(SparqlRewriter.isProjectedExpression("SELECT ?s ?modified WHERE { ?s ?p ?modified }", "modified"));
+		assertFalse(SparqlRewriter.isProjectedExpression("SELECT ?s (MAX(?m) AS ?modifiedAt) WHERE { ?s ?p ?m } GROUP BY ?s", "modified"));
+		assertFalse(SparqlRewriter.isProjectedExpression("SELECT ?s ?m WHERE { { SELECT ?s (MAX(?x) AS ?m) WHERE { ?s ?p ?x } GROUP BY ?s } }", "m"));
+	}
+
+	@Test
+	public void isIriRejectsWhatWouldBreakOutOfAnIriReference() {
+		assertTrue(SparqlRewriter.isIri("http://ex.org/id/1?x=y#z"));
+		assertTrue(SparqlRewriter.isIri("urn:isbn:0451450523"));
+		assertFalse(SparqlRewriter.isIri("http://ex.org/a> } ; DROP ALL ; SELECT * { <x"));
+		assertFalse(SparqlRewriter.isIri("http://ex.org/a b"));
+		assertFalse(SparqlRewriter.isIri("http://ex.org/\"quoted\""));
+		assertFalse(SparqlRewriter.isIri("relative/path"));
+		assertFalse(SparqlRewriter.isIri(""));
+	}
+
+	@Test
+	public void getPrefixesReadsTheDeclarationsInOrder() {
+		Map<String, String> prefixes = SparqlRewriter.getPrefixes("PREFIX ex: <http://ex.org/>\nprefix : <http://default.org/#>\nSELECT ?s WHERE { ?s ex:p ?o }");
+		assertEquals(2, prefixes.size());
+		assertEquals("http://ex.org/", prefixes.get("ex"));
+		assertEquals("http://default.org/#", prefixes.get(""));
+		assertEquals("ex", prefixes.keySet().iterator().next());
+	}
+
+}